@@ -0,0 +1,216 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of announcements. Announcements only depend on a user's groups, so they are
+ * requested once per distinct set of groups (using the first user seen with those groups) and
+ * then served from memory for every user with the same groups. Group sets that were looked up
+ * since the last refresh are refreshed periodically, other group sets are forgotten.
+ *
+ * <p>Before a refresh, the groups of the user that represents a group set are loaded again. If they
+ * changed, the user no longer represents the group set, and the next user looked up with those
+ * groups does. Until then, the group set keeps its previous announcements.</p>
+ *
+ * @see FluxAPI#createAnnouncementIndex(long, TimeUnit)
+ */
+public final class AnnouncementIndex {
+
+	private final @NotNull FluxAPI api;
+	// User id used to request announcements for each group set
+	private final @NotNull Map<GroupSet, Integer> representatives = new ConcurrentHashMap<>();
+	// Group sets looked up since the last refresh
+	private final @NotNull Set<GroupSet> used = ConcurrentHashMap.newKeySet();
+	private volatile @NotNull Index index = new Index(Collections.emptyMap());
+	private final @NotNull ScheduledFuture<?> task;
+
+	AnnouncementIndex(final @NotNull FluxAPI api, final long refreshInterval, final @NotNull TimeUnit unit) {
+		this.api = Objects.requireNonNull(api, "API is null");
+		this.task = api.getExecutor().scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, unit);
+	}
+
+	/**
+	 * Get announcements visible to a user. Only makes a request if no other user with the same groups has been seen before.
+	 * @param user User, user info is loaded if it hasn't been loaded yet
+	 * @return Announcements visible to this user
+	 */
+	public @NotNull List<@NotNull Announcement> getAnnouncements(final @NotNull FluxUser user) throws FluxException {
+		return this.getAnnouncements(user, null);
+	}
+
+	/**
+	 * Get announcements visible to a user on a specific page
+	 * @param user User, user info is loaded if it hasn't been loaded yet
+	 * @param page Page name, or null for announcements on any page
+	 * @return Announcements visible to this user on this page
+	 */
+	public @NotNull List<@NotNull Announcement> getAnnouncements(final @NotNull FluxUser user, final @Nullable String page) throws FluxException {
+		final GroupSet groups = new GroupSet(user.getSnapshot().getGroupIds());
+
+		this.used.add(groups);
+		// Replaces a representative whose groups changed
+		this.representatives.putIfAbsent(groups, user.getId());
+
+		Index index = this.index;
+		BitSet visible = index.byGroupSet.get(groups);
+		if (visible == null) {
+			final List<Announcement> announcements = this.api.getAnnouncements(user);
+			synchronized (this) {
+				final Map<GroupSet, List<Announcement>> lists = this.index.lists();
+				lists.put(groups, announcements);
+				this.index = new Index(lists);
+			}
+			index = this.index;
+			visible = index.byGroupSet.get(groups);
+		}
+
+		final BitSet result = (BitSet) visible.clone();
+		if (page != null) {
+			final BitSet onPage = index.byPage.get(page);
+			if (onPage == null) {
+				return Collections.emptyList();
+			}
+			result.and(onPage);
+		}
+		return index.toList(result);
+	}
+
+	/**
+	 * @return Known announcements displayed to a group, without making requests
+	 */
+	public @NotNull List<@NotNull Announcement> getAnnouncementsForGroup(final int groupId) {
+		final Index index = this.index;
+		final BitSet forGroup = index.byGroup.get(groupId);
+		return forGroup == null ? Collections.emptyList() : index.toList(forGroup);
+	}
+
+	/**
+	 * Stop refreshing announcements. Cached announcements are kept.
+	 */
+	public void stop() {
+		this.task.cancel(false);
+	}
+
+	private void refresh() {
+		final Set<GroupSet> unused = new HashSet<>();
+		for (final GroupSet groups : this.index.byGroupSet.keySet()) {
+			if (!this.used.remove(groups)) {
+				unused.add(groups);
+			}
+		}
+		this.representatives.keySet().removeAll(unused);
+
+		final Map<GroupSet, List<Announcement>> refreshed = new HashMap<>();
+		for (final Map.Entry<GroupSet, Integer> e : this.representatives.entrySet()) {
+			final FluxUser user = this.api.getUserLazy(e.getValue());
+			try {
+				// Groups may have changed since the user was seen
+				user.invalidateCache();
+				if (!e.getKey().equals(new GroupSet(user.getSnapshot(RequestPriority.BACKGROUND).getGroupIds()))) {
+					this.representatives.remove(e.getKey(), e.getValue());
+					continue;
+				}
+				refreshed.put(e.getKey(), this.api.getAnnouncements(user));
+			} catch (final UserNotExistException ignored) {
+				this.representatives.remove(e.getKey(), e.getValue());
+			} catch (final FluxException ignored) {
+				// Keep the old announcements for this group set
+			}
+		}
+
+		synchronized (this) {
+			final Map<GroupSet, List<Announcement>> lists = this.index.lists();
+			lists.keySet().removeAll(unused);
+			lists.putAll(refreshed);
+			this.index = new Index(lists);
+		}
+	}
+
+	private static class Index {
+
+		private final @NotNull Announcement @NotNull[] announcements;
+		private final @NotNull Map<GroupSet, BitSet> byGroupSet = new HashMap<>();
+		private final @NotNull Map<String, BitSet> byPage = new HashMap<>();
+		private final @NotNull Map<Integer, BitSet> byGroup = new HashMap<>();
+
+		private Index(final @NotNull Map<GroupSet, List<Announcement>> lists) {
+			final Map<Integer, Integer> positions = new HashMap<>();
+			final List<Announcement> announcements = new ArrayList<>();
+			for (final Map.Entry<GroupSet, List<Announcement>> e : lists.entrySet()) {
+				final BitSet visible = new BitSet();
+				for (final Announcement announcement : e.getValue()) {
+					Integer position = positions.get(announcement.getId());
+					if (position == null) {
+						position = announcements.size();
+						positions.put(announcement.getId(), position);
+						announcements.add(announcement);
+						for (final String page : announcement.getDisplayPages()) {
+							this.byPage.computeIfAbsent(page, k -> new BitSet()).set(position);
+						}
+						for (final int groupId : announcement.getDisplayGroupIds()) {
+							this.byGroup.computeIfAbsent(groupId, k -> new BitSet()).set(position);
+						}
+					}
+					visible.set(position);
+				}
+				this.byGroupSet.put(e.getKey(), visible);
+			}
+			this.announcements = announcements.toArray(new Announcement[0]);
+		}
+
+		private @NotNull List<Announcement> toList(final @NotNull BitSet bits) {
+			final List<Announcement> list = new ArrayList<>(bits.cardinality());
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+				list.add(this.announcements[i]);
+			}
+			return list;
+		}
+
+		private @NotNull Map<GroupSet, List<Announcement>> lists() {
+			final Map<GroupSet, List<Announcement>> lists = new HashMap<>();
+			this.byGroupSet.forEach((groups, bits) -> lists.put(groups, this.toList(bits)));
+			return lists;
+		}
+
+	}
+
+	private static class GroupSet {
+
+		private final int @NotNull[] sortedIds;
+		private final int hash;
+
+		private GroupSet(final int @NotNull[] ids) {
+			this.sortedIds = ids.clone();
+			Arrays.sort(this.sortedIds);
+			this.hash = Arrays.hashCode(this.sortedIds);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			return other instanceof GroupSet &&
+					Arrays.equals(((GroupSet) other).sortedIds, this.sortedIds);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of fixed-size byte arrays used for reading responses and writing request bodies.
+ * Buffers are kept in a fixed number of slots, and threads start looking for a free slot at a
+ * position based on their thread id so concurrent requests rarely contend for the same slot.
+ * Can be shared between multiple API instances.
+ */
+public final class BufferPool {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_BUFFERS = 16;
+
+	private final int bufferSize;
+	private final @NotNull AtomicReferenceArray<byte[]> slots;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param bufferSize Size of pooled buffers in bytes. Larger bodies use temporary buffers.
+	 * @param maxBuffers Maximum number of buffers kept in the pool
+	 */
+	public BufferPool(final int bufferSize, final int maxBuffers) {
+		if (bufferSize <= 0 || maxBuffers <= 0) {
+			throw new IllegalArgumentException("Buffer size and maximum buffer count must be positive");
+		}
+		this.bufferSize = bufferSize;
+		this.slots = new AtomicReferenceArray<>(maxBuffers);
+	}
+
+	public BufferPool() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS);
+	}
+
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	/**
+	 * @return Number of times a buffer was taken from the pool
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return Number of times a new buffer had to be allocated, because the pool was empty or a larger buffer was needed
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	@NotNull Buffer acquire() {
+		return new Buffer(this.take());
+	}
+
+	private byte @NotNull[] take() {
+		final int length = this.slots.length();
+		final int start = (int) (Thread.currentThread().getId() % length);
+		for (int i = 0; i < length; i++) {
+			final byte[] bytes = this.slots.getAndSet((start + i) % length, null);
+			if (bytes != null) {
+				this.hits.increment();
+				return bytes;
+			}
+		}
+		this.misses.increment();
+		return new byte[this.bufferSize];
+	}
+
+	private void give(final byte @NotNull[] bytes) {
+		if (bytes.length != this.bufferSize) {
+			return;
+		}
+		final int length = this.slots.length();
+		final int start = (int) (Thread.currentThread().getId() % length);
+		for (int i = 0; i < length; i++) {
+			if (this.slots.compareAndSet((start + i) % length, null, bytes)) {
+				return;
+			}
+		}
+		// Pool is full, let the buffer be garbage collected
+	}
+
+	/**
+	 * Growable output stream backed by a pooled buffer. Closing it returns the buffer to the pool,
+	 * it must not be used after that.
+	 */
+	final class Buffer extends OutputStream {
+
+		private byte @NotNull[] bytes;
+		private int size;
+		private boolean closed;
+
+		private Buffer(final byte @NotNull[] bytes) {
+			this.bytes = bytes;
+		}
+
+		private void ensureCapacity(final int capacity) {
+			if (capacity > this.bytes.length) {
+				this.resize(Math.max(capacity, this.bytes.length * 2));
+			}
+		}
+
+		private void resize(final int capacity) {
+			final byte[] old = this.bytes;
+			this.bytes = Arrays.copyOf(old, capacity);
+			BufferPool.this.misses.increment();
+			BufferPool.this.give(old);
+		}
+
+		@Override
+		public void write(final int b) {
+			this.ensureCapacity(this.size + 1);
+			this.bytes[this.size++] = (byte) b;
+		}
+
+		@Override
+		public void write(final byte @NotNull[] b, final int off, final int len) {
+			this.ensureCapacity(this.size + len);
+			System.arraycopy(b, off, this.bytes, this.size, len);
+			this.size += len;
+		}
+
+		/**
+		 * Read a stream until the end into this buffer
+		 * @param in Input stream
+		 * @param expectedLength Expected number of bytes (like a Content-Length header), or -1 if unknown
+		 */
+		void readFrom(final @NotNull InputStream in, final long expectedLength) throws IOException {
+			if (expectedLength > 0 && this.size + expectedLength < Integer.MAX_VALUE - 1) {
+				// One extra byte, so reaching the end of the stream doesn't require growing the buffer
+				final int capacity = this.size + (int) expectedLength + 1;
+				if (capacity > this.bytes.length) {
+					this.resize(capacity);
+				}
+			}
+			while (true) {
+				if (this.size == this.bytes.length) {
+					this.ensureCapacity(this.size + 1);
+				}
+				final int read = in.read(this.bytes, this.size, this.bytes.length - this.size);
+				if (read == -1) {
+					return;
+				}
+				this.size += read;
+			}
+		}
+
+		byte @NotNull[] array() {
+			return this.bytes;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		@NotNull String toUtf8String() {
+			return new String(this.bytes, 0, this.size, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void close() {
+			if (!this.closed) {
+				this.closed = true;
+				BufferPool.this.give(this.bytes);
+			}
+		}
+
+	}
+
+}
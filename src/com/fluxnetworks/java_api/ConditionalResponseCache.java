@@ -0,0 +1,75 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Last response for GET requests that had an ETag or Last-Modified header, keyed by URL, weighed by length.
+ *
+ * <p>One cache can be shared by the sites of a {@link FluxClientGroup}, so all sites together stay within
+ * one budget. Each {@link RequestHandler} gets its own key prefix, sites with the same URL but a different
+ * API key may get different responses.</p>
+ */
+final class ConditionalResponseCache {
+
+	private final @NotNull Cache<String, Entry> entries;
+	// Longer responses are not kept, so a few large user lists can't take up the whole cache
+	private final int maxResponseLength;
+	private final @NotNull AtomicInteger owners = new AtomicInteger();
+
+	/**
+	 * @param maxChars Total length of the kept responses
+	 */
+	ConditionalResponseCache(final int maxChars) {
+		if (maxChars <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.entries = CacheBuilder.newBuilder()
+				.maximumWeight(maxChars)
+				.<String, Entry>weigher((url, response) -> response.body.length())
+				.build();
+		this.maxResponseLength = maxChars / 8;
+	}
+
+	/**
+	 * @return Prefix for the keys of a new request handler
+	 */
+	@NotNull String newKeyPrefix() {
+		return this.owners.incrementAndGet() + " ";
+	}
+
+	@Nullable Entry get(final @NotNull String key) {
+		return this.entries.getIfPresent(key);
+	}
+
+	/**
+	 * Keep a response, or forget the previous response if this one can't be kept
+	 */
+	void put(final @NotNull String key, final @Nullable String etag, final @Nullable String lastModified, final @NotNull String body) {
+		if ((etag != null || lastModified != null) && body.length() <= this.maxResponseLength) {
+			this.entries.put(key, new Entry(etag, lastModified, body));
+		} else {
+			this.entries.invalidate(key);
+		}
+	}
+
+	static final class Entry {
+
+		final @Nullable String etag;
+		final @Nullable String lastModified;
+		// Kept as the response text, json objects are mutable and can't be shared between callers
+		final @NotNull String body;
+
+		private Entry(final @Nullable String etag, final @Nullable String lastModified, final @NotNull String body) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.body = body;
+		}
+
+	}
+
+}
@@ -2,14 +2,30 @@ package com.fluxnetworks.java_api;
 
 public enum CustomProfileFieldType {
 
-	TEXT,
-	TEXT_AREA,
-	DATE;
+	TEXT(1),
+	TEXT_AREA(2),
+	DATE(3);
 
-	private static final CustomProfileFieldType[] VALUES = CustomProfileFieldType.values();
+	private final int fluxTypeInt;
+
+	CustomProfileFieldType(final int fluxTypeInt) {
+		this.fluxTypeInt = fluxTypeInt;
+	}
+
+	/**
+	 * @return Type number used by the website, which is also used to store the type, so it never changes
+	 */
+	public int getFluxTypeInt() {
+		return this.fluxTypeInt;
+	}
 
 	public static CustomProfileFieldType fromFluxTypeInt(int FluxTypeInt) {
-		return VALUES[FluxTypeInt - 1];
+		for (final CustomProfileFieldType type : values()) {
+			if (type.fluxTypeInt == FluxTypeInt) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown profile field type " + FluxTypeInt);
 	}
 
 }
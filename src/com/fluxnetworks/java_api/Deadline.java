@@ -0,0 +1,117 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget for all requests made by a thread while the deadline is attached, including time spent
+ * waiting to start, connecting, sending and receiving. Requests still running when the deadline passes,
+ * or when {@link #cancel()} is called from another thread, are aborted by closing their connection.
+ *
+ * <pre>{@code
+ * final Deadline deadline = Deadline.after(2, TimeUnit.SECONDS);
+ * try (Deadline.Scope ignored = deadline.attach()) {
+ *     api.getUser(uuid);
+ * }
+ * }</pre>
+ *
+ * @see FluxApiBuilder#withDeadlineMillis(long)
+ */
+public final class Deadline {
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	static final long NONE = Long.MAX_VALUE;
+
+	private final long deadlineNanos; // System.nanoTime() based, NONE for no time limit
+	private volatile boolean cancelled;
+	// Aborts running requests
+	private final Set<Runnable> requests = ConcurrentHashMap.newKeySet();
+
+	private Deadline(final long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	public static @NotNull Deadline after(final long duration, final @NotNull TimeUnit unit) {
+		Objects.requireNonNull(unit, "Unit is null");
+		return new Deadline(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/**
+	 * @return Deadline without a time limit, that can only be cancelled
+	 */
+	public static @NotNull Deadline none() {
+		return new Deadline(NONE);
+	}
+
+	static @Nullable Deadline current() {
+		return CURRENT.get();
+	}
+
+	long getDeadlineNanos() {
+		return this.deadlineNanos;
+	}
+
+	public boolean isExpired() {
+		return this.deadlineNanos != NONE && System.nanoTime() - this.deadlineNanos >= 0;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Abort running requests using this deadline, and make further requests fail immediately
+	 */
+	public void cancel() {
+		this.cancelled = true;
+		for (final Runnable abort : this.requests) {
+			abort.run();
+		}
+	}
+
+	/**
+	 * Use this deadline for requests made by the current thread, until the returned scope is closed
+	 */
+	public @NotNull Scope attach() {
+		final Deadline previous = CURRENT.get();
+		CURRENT.set(this);
+		return new Scope(previous);
+	}
+
+	void register(final @NotNull Runnable abort) {
+		this.requests.add(abort);
+		if (this.cancelled) {
+			abort.run();
+		}
+	}
+
+	void unregister(final @NotNull Runnable abort) {
+		this.requests.remove(abort);
+	}
+
+	public static final class Scope implements AutoCloseable {
+
+		private final @Nullable Deadline previous;
+
+		private Scope(final @Nullable Deadline previous) {
+			this.previous = previous;
+		}
+
+		@Override
+		public void close() {
+			if (this.previous != null) {
+				CURRENT.set(this.previous);
+			} else {
+				CURRENT.remove();
+			}
+		}
+
+	}
+
+}
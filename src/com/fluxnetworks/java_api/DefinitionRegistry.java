@@ -0,0 +1,196 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Canonical {@link Group} and {@link CustomProfileField} instances for a website. There are only a few
+ * distinct groups and profile fields, so user snapshots share these instances instead of each holding
+ * their own copies.
+ *
+ * <p>Each group id is also given a small index, used for the group bitsets of user snapshots and
+ * {@link GroupMask}s. Indexes are never reused, not even for deleted groups.</p>
+ *
+ * <p>When a definition changes on the website, like a renamed group, the next user info or group list that
+ * contains it replaces the registered instance. Snapshots decoded earlier keep the old instance until they
+ * are reloaded.</p>
+ *
+ * @see FluxAPI#getDefinitions()
+ */
+public final class DefinitionRegistry {
+
+	private static final long[] NO_BITS = new long[0];
+
+	private final @NotNull Map<Integer, Group> groups = new ConcurrentHashMap<>();
+	private final @NotNull Map<Integer, CustomProfileField> profileFields = new ConcurrentHashMap<>();
+	private final @NotNull Map<Integer, Integer> groupIndexes = new ConcurrentHashMap<>();
+	private final @NotNull AtomicInteger nextGroupIndex = new AtomicInteger();
+
+	// Group list decoded from the last groups response, reused while the response is served from the cache
+	private volatile @Nullable DecodedGroups lastGroups;
+
+	DefinitionRegistry() {
+	}
+
+	/**
+	 * @return Group with this id, or null if no user info or group list containing it has been loaded
+	 */
+	public @Nullable Group getGroup(final int id) {
+		return this.groups.get(id);
+	}
+
+	public @NotNull Collection<@NotNull Group> getGroups() {
+		return Collections.unmodifiableCollection(this.groups.values());
+	}
+
+	/**
+	 * @return Profile field with this id, or null if no user info containing it has been loaded
+	 */
+	public @Nullable CustomProfileField getProfileField(final int id) {
+		return this.profileFields.get(id);
+	}
+
+	public @NotNull Collection<@NotNull CustomProfileField> getProfileFields() {
+		return Collections.unmodifiableCollection(this.profileFields.values());
+	}
+
+	/**
+	 * Create a mask for checking whether users are in any of these groups
+	 * @param groupIds Group ids, groups don't need to exist
+	 */
+	public @NotNull GroupMask mask(final int @NotNull... groupIds) {
+		Objects.requireNonNull(groupIds, "Group ids is null");
+		return new GroupMask(this, this.bits(groupIds), groupIds.clone());
+	}
+
+	/**
+	 * @return Bitset with the index of each group set, an empty array for no groups
+	 */
+	long @NotNull[] bits(final int @NotNull[] groupIds) {
+		if (groupIds.length == 0) {
+			return NO_BITS;
+		}
+		long[] bits = NO_BITS;
+		for (final int groupId : groupIds) {
+			final int index = this.groupIndex(groupId);
+			if (index >>> 6 >= bits.length) {
+				bits = Arrays.copyOf(bits, (index >>> 6) + 1);
+			}
+			bits[index >>> 6] |= 1L << index;
+		}
+		return bits;
+	}
+
+	private int groupIndex(final int groupId) {
+		final Integer index = this.groupIndexes.get(groupId);
+		if (index != null) {
+			return index;
+		}
+		return this.groupIndexes.computeIfAbsent(groupId, k -> this.nextGroupIndex.getAndIncrement());
+	}
+
+	/**
+	 * @return Registered group if it has the same definition, otherwise a new group that replaces it
+	 */
+	@NotNull Group group(final int id, final @NotNull String name, final int order, final boolean staff) {
+		final Group existing = this.groups.get(id);
+		if (existing != null && existing.getName().equals(name) && existing.getOrder() == order && existing.isStaff() == staff) {
+			return existing;
+		}
+		return this.groups.compute(id, (k, current) ->
+				current != null && current.getName().equals(name) && current.getOrder() == order && current.isStaff() == staff
+						? current
+						: new Group(id, name, order, staff));
+	}
+
+	@NotNull Group group(final @NotNull JsonObject json) {
+		return this.group(json.get("id").getAsInt(),
+				json.get("name").getAsString(),
+				json.get("order").getAsInt(),
+				json.has("staff") && json.get("staff").getAsBoolean());
+	}
+
+	/**
+	 * Remove a deleted group. Its index is kept, so masks containing it stay valid.
+	 * @return Group that was registered, or null if it wasn't registered
+	 */
+	@Nullable Group removeGroup(final int id) {
+		return this.groups.remove(id);
+	}
+
+	/**
+	 * @return Registered profile field if it has the same definition, otherwise a new field that replaces it
+	 */
+	@NotNull CustomProfileField profileField(final int id, final @NotNull String name, final @NotNull CustomProfileFieldType type,
+											 final boolean isPublic, final boolean isRequired, final @NotNull String description) {
+		final CustomProfileField existing = this.profileFields.get(id);
+		if (existing != null && sameField(existing, name, type, isPublic, isRequired, description)) {
+			return existing;
+		}
+		return this.profileFields.compute(id, (k, current) ->
+				current != null && sameField(current, name, type, isPublic, isRequired, description)
+						? current
+						: new CustomProfileField(id, name, type, isPublic, isRequired, description));
+	}
+
+	/**
+	 * Decode a groups response. Groups that are no longer in the list are removed from the registry.
+	 * @return Groups in the response, the same list as the previous call if the response is the same instance
+	 */
+	@NotNull List<Group> groups(final @NotNull JsonObject response) {
+		final DecodedGroups last = this.lastGroups;
+		if (last != null && last.response == response) {
+			return last.list;
+		}
+
+		final JsonArray array = response.getAsJsonArray("groups");
+		final List<Group> list = new ArrayList<>(array.size());
+		final Set<Integer> ids = new HashSet<>();
+		for (int i = 0; i < array.size(); i++) {
+			final Group group = this.group(array.get(i).getAsJsonObject());
+			list.add(group);
+			ids.add(group.getId());
+		}
+		this.groups.keySet().retainAll(ids);
+
+		final List<Group> unmodifiable = Collections.unmodifiableList(list);
+		this.lastGroups = new DecodedGroups(response, unmodifiable);
+		return unmodifiable;
+	}
+
+	private static boolean sameField(final @NotNull CustomProfileField field, final @NotNull String name, final @NotNull CustomProfileFieldType type,
+									 final boolean isPublic, final boolean isRequired, final @NotNull String description) {
+		return field.getName().equals(name) &&
+				field.getType() == type &&
+				field.isPublic() == isPublic &&
+				field.isRequired() == isRequired &&
+				field.getDescription().equals(description);
+	}
+
+	private static final class DecodedGroups {
+
+		private final @NotNull JsonObject response;
+		private final @NotNull List<Group> list;
+
+		private DecodedGroups(final @NotNull JsonObject response, final @NotNull List<Group> list) {
+			this.response = response;
+			this.list = list;
+		}
+
+	}
+
+}
@@ -1,21 +1,25 @@
 package com.fluxnetworks.java_api;
 
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class FilteredUserListBuilder {
 
+	private static final Route USERS = Route.of("users", RequestPriority.BACKGROUND);
+
 	private final @NotNull FluxAPI api;
 	private @Nullable Map<UserFilter<?>, Object> filters;
 	private @NotNull String operator = "AND";
@@ -33,6 +37,18 @@ public class FilteredUserListBuilder {
 		return this;
 	}
 
+	/**
+	 * Add filters with values that were checked to have the filter's type
+	 */
+	@NotNull FilteredUserListBuilder withFilters(final @NotNull Map<UserFilter<?>, Object> filters) {
+		if (this.filters == null) {
+			this.filters = new HashMap<>();
+		}
+
+		this.filters.putAll(filters);
+		return this;
+	}
+
 	public FilteredUserListBuilder all() {
 		this.operator = "AND";
 		return this;
@@ -43,7 +59,25 @@ public class FilteredUserListBuilder {
 		return this;
 	}
 
-	public List<FluxUser> makeRequest() throws FluxException {
+	/**
+	 * Make the request without creating user objects
+	 * @return Json array of users, each with an id, username and optionally uuid
+	 */
+	@NotNull JsonArray makeRawRequest() throws FluxException {
+		final JsonObject response = this.api.getRequestHandler().get(USERS, this.parameters());
+		return response.getAsJsonArray("users");
+	}
+
+	/**
+	 * Make the request conditional on a previous response for the same filters
+	 * @param previous Previous response, or null to make a normal request
+	 * @return Response, with a {@code users} array unless it was not modified since the previous response
+	 */
+	@NotNull RequestHandler.Response makeConditionalRequest(final @Nullable RequestHandler.Response previous) throws FluxException {
+		return this.api.getRequestHandler().getConditional(USERS, previous, this.parameters());
+	}
+
+	private @NotNull Object @NotNull[] parameters() {
 		final Object[] parameters;
 		if (filters != null) {
 			int filterCount = filters.size();
@@ -51,7 +85,7 @@ public class FilteredUserListBuilder {
 			parameters[0] = "operator";
 			parameters[1] = operator;
 			Iterator<Map.Entry<UserFilter<?>, Object>> iterator = filters.entrySet().iterator();
-			for (int i = 1; i < filterCount; i++) {
+			for (int i = 1; i <= filterCount; i++) {
 				Map.Entry<UserFilter<?>, Object> entry = iterator.next();
 				parameters[i*2] = entry.getKey().getName();
 				parameters[i*2+1] = entry.getValue();
@@ -59,29 +93,129 @@ public class FilteredUserListBuilder {
 		} else {
 			parameters = new Object[0];
 		}
+		return parameters;
+	}
 
-		final JsonObject response = this.api.getRequestHandler().get("users", parameters);
-		final JsonArray array = response.getAsJsonArray("users");
-		final List<FluxUser> users = new ArrayList<>(array.size());
-		for (final JsonElement e : array) {
-			final JsonObject o = e.getAsJsonObject();
-			final int id = o.get("id").getAsInt();
-			final String username = o.get("username").getAsString();
-			final UUID uuid;
-			if (o.has("uuid")) {
-				final String uuidString = o.get("uuid").getAsString();
-				if (uuidString == null || uuidString.equals("none") || uuidString.equals("")) {
-					uuid = null;
-				} else {
-					uuid = FluxAPI.websiteUuidToJavaUuid(uuidString);
-				}
-			} else {
+	public List<FluxUser> makeRequest() throws FluxException {
+		return this.decode(this.makeRawRequest());
+	}
+
+	/**
+	 * Create user objects for a raw response, in parallel if the list reaches the parallel decoding threshold
+	 */
+	@NotNull List<FluxUser> decode(final @NotNull JsonArray array) {
+		final FluxUser[] users = new FluxUser[array.size()];
+		final int threshold = this.api.getParallelDecodingThreshold();
+		if (threshold != -1 && users.length >= threshold) {
+			this.api.getDecodingPool().invoke(new DecodeTask(this.api, array, users, 0, users.length));
+		} else {
+			decode(this.api, array, users, 0, users.length);
+		}
+		return Collections.unmodifiableList(Arrays.asList(users));
+	}
+
+	/**
+	 * Publish the users instead of returning a list. The request is made when the subscriber first requests
+	 * users, after that users are only decoded as they are requested. Each subscriber makes its own request.
+	 * @return Publisher of users, delivering users on the API executor
+	 */
+	public @NotNull FluxPublisher<FluxUser> publish() {
+		return new FluxPublisher<>(this.api.getExecutor(), wakeUp -> new UserSource(this), -1, TimeUnit.MILLISECONDS);
+	}
+
+	private static void decode(final @NotNull FluxAPI api, final @NotNull JsonArray array, final @NotNull FluxUser @NotNull[] users,
+							   final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			users[i] = decode(api, array.get(i).getAsJsonObject());
+		}
+	}
+
+	private static @NotNull FluxUser decode(final @NotNull FluxAPI api, final @NotNull JsonObject o) {
+		final int id = o.get("id").getAsInt();
+		final String username = o.get("username").getAsString();
+		final UUID uuid;
+		if (o.has("uuid")) {
+			final String uuidString = o.get("uuid").getAsString();
+			if (uuidString == null || uuidString.equals("none") || uuidString.equals("")) {
 				uuid = null;
+			} else {
+				uuid = FluxAPI.websiteUuidToJavaUuid(uuidString);
+			}
+		} else {
+			uuid = null;
+		}
+		return new FluxUser(api, id, username, true, uuid, false, -1L);
+	}
+
+	/**
+	 * Makes the request on the first fetch, then decodes users in chunks of at most the requested size
+	 */
+	private static class UserSource implements FluxPublisher.Source<FluxUser> {
+
+		// Users decoded at once when the subscriber requests an unbounded number
+		private static final int MAX_CHUNK_SIZE = 1024;
+
+		private final @NotNull FilteredUserListBuilder builder;
+		private @Nullable JsonArray array;
+		private int next;
+
+		private UserSource(final @NotNull FilteredUserListBuilder builder) {
+			this.builder = builder;
+		}
+
+		@Override
+		public boolean fetch(final long demand, final @NotNull Consumer<FluxUser> sink) throws FluxException {
+			if (this.array == null) {
+				this.array = this.builder.makeRawRequest();
+			}
+			final int to = (int) Math.min(this.array.size(), this.next + Math.min(demand, MAX_CHUNK_SIZE));
+			for (; this.next < to; this.next++) {
+				sink.accept(decode(this.builder.api, this.array.get(this.next).getAsJsonObject()));
+			}
+			return this.next < this.array.size();
+		}
+
+		@Override
+		public void close(final @NotNull List<FluxUser> undelivered) {
+			this.array = null;
+		}
+
+	}
+
+	/**
+	 * Splits a user list in halves until they are small enough to decode on one thread
+	 */
+	private static class DecodeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK_SIZE = 2048;
+
+		private final transient @NotNull FluxAPI api;
+		private final transient @NotNull JsonArray array;
+		private final transient @NotNull FluxUser @NotNull[] users;
+		private final int from;
+		private final int to;
+
+		private DecodeTask(final @NotNull FluxAPI api, final @NotNull JsonArray array, final @NotNull FluxUser @NotNull[] users,
+						   final int from, final int to) {
+			this.api = api;
+			this.array = array;
+			this.users = users;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= CHUNK_SIZE) {
+				decode(this.api, this.array, this.users, this.from, this.to);
+			} else {
+				final int middle = (this.from + this.to) >>> 1;
+				invokeAll(new DecodeTask(this.api, this.array, this.users, this.from, middle),
+						new DecodeTask(this.api, this.array, this.users, middle, this.to));
 			}
-			users.add(new FluxUser(this.api, id, username, true, uuid, false, -1L));
 		}
 
-		return Collections.unmodifiableList(users);
 	}
 
 }
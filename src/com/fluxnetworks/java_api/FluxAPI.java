@@ -10,9 +10,17 @@ import com.fluxnetworks.java_api.modules.websend.WebsendAPI;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -20,11 +28,38 @@ public final class FluxAPI {
 
 	static final Gson GSON = new Gson();
 
+	private static final Route ANNOUNCEMENTS = Route.of("users/{id}/announcements");
+	private static final Route GROUPS = Route.of("groups");
+	private static final Route INFO = Route.of("info");
+	private static final Route SERVER_INFO = Route.of("minecraft/server-info", RequestPriority.BACKGROUND);
+	private static final Route SUBMIT_ROLE_LIST = Route.of("discord/submit-role-list", RequestPriority.BACKGROUND);
+	private static final Route UPDATE_USERNAMES = Route.of("discord/update-usernames", RequestPriority.BACKGROUND);
+	private static final Route VERIFY = Route.of("integration/verify", RequestPriority.INTERACTIVE);
+
 	@NotNull
 	private final RequestHandler requests;
-
-	FluxAPI(@NotNull final RequestHandler requests) {
+	@NotNull
+	private final ScheduledExecutorService executor;
+	@Nullable
+	private final UserCache userCache;
+	@NotNull
+	private final DefinitionRegistry definitions;
+	@NotNull
+	private final ForkJoinPool decodingPool;
+	private final int parallelDecodingThreshold;
+
+	FluxAPI(@NotNull final RequestHandler requests,
+			@NotNull final ScheduledExecutorService executor,
+			@Nullable final UserCache userCache,
+			@NotNull final DefinitionRegistry definitions,
+			@NotNull final ForkJoinPool decodingPool,
+			final int parallelDecodingThreshold) {
 		this.requests = Objects.requireNonNull(requests, "Request handler is null");
+		this.executor = Objects.requireNonNull(executor, "Executor is null");
+		this.userCache = userCache;
+		this.definitions = Objects.requireNonNull(definitions, "Definition registry is null");
+		this.decodingPool = Objects.requireNonNull(decodingPool, "Decoding pool is null");
+		this.parallelDecodingThreshold = parallelDecodingThreshold;
 	}
 
 	@NotNull
@@ -32,6 +67,48 @@ public final class FluxAPI {
 		return this.requests;
 	}
 
+	/**
+	 * @return Statistics for requests made by this API instance
+	 */
+	@NotNull
+	public RequestMetrics getMetrics() {
+		return this.requests.getMetrics();
+	}
+
+	/**
+	 * @return Groups and profile fields seen in responses from the website
+	 */
+	@NotNull
+	public DefinitionRegistry getDefinitions() {
+		return this.definitions;
+	}
+
+	@NotNull
+	ScheduledExecutorService getExecutor() {
+		return this.executor;
+	}
+
+	@NotNull
+	ForkJoinPool getDecodingPool() {
+		return this.decodingPool;
+	}
+
+	/**
+	 * @return Minimum number of users in a response to decode it in parallel, -1 if disabled
+	 */
+	int getParallelDecodingThreshold() {
+		return this.parallelDecodingThreshold;
+	}
+
+	/**
+	 * @return Cache used for user and group lookups, or null if caching is not enabled
+	 * @see FluxApiBuilder#withPersistentCache(File, long)
+	 */
+	@Nullable
+	public UserCache getUserCache() {
+		return this.userCache;
+	}
+
 	@NotNull
 	public URL getApiUrl() {
 		return this.getRequestHandler().getApiUrl();
@@ -73,11 +150,88 @@ public final class FluxAPI {
 	 */
 	@NotNull
 	public List<@NotNull Announcement> getAnnouncements(@NotNull final FluxUser user) throws FluxException {
-		final JsonObject response = this.requests.get("users/" + user.getId() + "/announcements");
+		final JsonObject response = this.getPrefetched(ANNOUNCEMENTS, user.getId());
 
 		return getAnnouncements(response);
 	}
 
+	/**
+	 * Start loading user info, announcements and notifications for users in the background, for example when
+	 * a player starts connecting. Lookups for these users made shortly after will use the loaded data instead
+	 * of making requests. Requires a user cache, see {@link FluxApiBuilder#withUserCache(long)}.
+	 * Requests run on the API executor, so the number of its threads limits how many run in parallel. They have
+	 * {@link RequestPriority#BACKGROUND} priority, so they don't delay lookups for players that are already online.
+	 * @param uuids Minecraft UUIDs of users to load
+	 * @return Future completed when everything has been loaded, or completed exceptionally if a request failed.
+	 * Users that don't exist are skipped. Cancelling the future aborts running requests.
+	 */
+	@NotNull
+	public CompletableFuture<Void> prefetch(@NotNull final UUID @NotNull... uuids) {
+		final UserCache cache = this.userCache;
+		if (cache == null) {
+			throw new IllegalStateException("Prefetching requires a user cache");
+		}
+
+		final Deadline deadline = Deadline.none();
+		final CompletableFuture<?>[] futures = new CompletableFuture<?>[uuids.length];
+		for (int i = 0; i < uuids.length; i++) {
+			final FluxUser user = this.getUserLazy(Objects.requireNonNull(uuids[i], "UUID is null"));
+			futures[i] = CompletableFuture.supplyAsync(() -> {
+				final Deadline.Scope scope = deadline.attach();
+				try {
+					return user.getSnapshot(RequestPriority.BACKGROUND).getId();
+				} catch (final UserNotExistException e) {
+					return -1;
+				} catch (final FluxException e) {
+					throw new CompletionException(e);
+				} finally {
+					scope.close();
+				}
+			}, this.executor).thenCompose(id -> id == -1
+					? CompletableFuture.completedFuture(null)
+					: CompletableFuture.allOf(
+							this.prefetch(cache, deadline, ANNOUNCEMENTS, id),
+							this.prefetch(cache, deadline, FluxUser.NOTIFICATIONS, id)));
+		}
+
+		final CompletableFuture<Void> result = CompletableFuture.allOf(futures);
+		result.whenComplete((ignored, e) -> {
+			if (result.isCancelled()) {
+				deadline.cancel();
+			}
+		});
+		return result;
+	}
+
+	private @NotNull CompletableFuture<Void> prefetch(@NotNull final UserCache cache, @NotNull final Deadline deadline,
+													  @NotNull final Route route, final int userId) {
+		return CompletableFuture.runAsync(() -> {
+			final Deadline.Scope scope = deadline.attach();
+			try {
+				cache.putPrefetched(route + ":" + userId, this.requests.get(route.withPriority(RequestPriority.BACKGROUND), userId));
+			} catch (final FluxException e) {
+				throw new CompletionException(e);
+			} finally {
+				scope.close();
+			}
+		}, this.executor);
+	}
+
+	/**
+	 * Get a per-user response, using the prefetched response if there is one
+	 * @see #prefetch(UUID...)
+	 */
+	@NotNull
+	JsonObject getPrefetched(@NotNull final Route route, final int userId) throws FluxException {
+		if (this.userCache != null) {
+			final JsonObject prefetched = this.userCache.getPrefetched(route + ":" + userId);
+			if (prefetched != null) {
+				return prefetched;
+			}
+		}
+		return this.requests.get(route, userId);
+	}
+
 	@NotNull
 	private static Set<@NotNull String> toStringSet(@NotNull final JsonArray jsonArray) {
 		return StreamSupport.stream(jsonArray.spliterator(), false).map(JsonElement::getAsString).collect(Collectors.toSet());
@@ -91,12 +245,82 @@ public final class FluxAPI {
 					.collect(Collectors.toList());
 	}
 
+	/**
+	 * Create an index that requests announcements once per distinct set of groups, instead of once per user
+	 * @param refreshInterval Time between refreshes of all known announcements
+	 * @param unit Unit of refreshInterval
+	 * @return Announcement index, call {@link AnnouncementIndex#stop()} when it's no longer needed
+	 */
+	@NotNull
+	public AnnouncementIndex createAnnouncementIndex(final long refreshInterval, @NotNull final TimeUnit unit) {
+		return new AnnouncementIndex(this, refreshInterval, unit);
+	}
+
+	/**
+	 * Create a watcher that polls notifications for watched users in the background
+	 * @param interval Time between polling rounds
+	 * @param unit Unit of interval
+	 * @param batchSize Maximum number of users polled per round
+	 * @return Notification watcher, call {@link NotificationWatcher#stop()} when it's no longer needed
+	 */
+	@NotNull
+	public NotificationWatcher createNotificationWatcher(final long interval, @NotNull final TimeUnit unit, final int batchSize) {
+		return new NotificationWatcher(this, interval, unit, batchSize);
+	}
+
+	/**
+	 * Create an event stream that polls the website for changes, see {@link FluxEventStream}
+	 * @param interval Time between the end of a poll and the start of the next poll
+	 * @param unit Time unit of the interval
+	 * @return Event stream, call {@link FluxEventStream#stop()} when it's no longer needed
+	 */
+	@NotNull
+	public FluxEventStream createEventStream(final long interval, @NotNull final TimeUnit unit) {
+		return new FluxEventStream(this, interval, unit);
+	}
+
+	/**
+	 * Start an HTTP endpoint for webhooks sent by the website, see {@link FluxWebhookReceiver}
+	 * @param address Address to listen on
+	 * @param path Path webhooks are sent to, for example {@code /flux/webhook}
+	 * @param secret Secret the website signs webhooks with
+	 * @return Webhook receiver, call {@link FluxWebhookReceiver#close()} when it's no longer needed
+	 * @throws IOException If the address can't be bound
+	 */
+	@NotNull
+	public FluxWebhookReceiver createWebhookReceiver(@NotNull final InetSocketAddress address, @NotNull final String path,
+													 @NotNull final String secret) throws IOException {
+		return new FluxWebhookReceiver(this, address, path, secret);
+	}
+
+	/**
+	 * Create a sync that refreshes new and changed users in the user cache, see {@link MemberSync}. Without a
+	 * changed-since filter, each sync requests the full user list.
+	 * @param stateFile File to store the last sync time in, or null to keep it in memory only
+	 * @return Member sync
+	 */
+	@NotNull
+	public MemberSync createMemberSync(@Nullable final File stateFile) {
+		return new MemberSync(this, stateFile, null);
+	}
+
+	/**
+	 * Create an incremental sync that refreshes new and changed users in the user cache, see {@link MemberSync}
+	 * @param stateFile File to store the last sync time in, or null to keep it in memory only
+	 * @param changedSinceFilter User list filter supported by the website, for users changed since a timestamp in seconds
+	 * @return Member sync
+	 */
+	@NotNull
+	public MemberSync createMemberSync(@Nullable final File stateFile, @NotNull final UserFilter<Long> changedSinceFilter) {
+		return new MemberSync(this, stateFile, Objects.requireNonNull(changedSinceFilter, "Filter is null"));
+	}
+
 	public void submitServerInfo(final @NotNull JsonObject jsonData) throws FluxException {
-		this.requests.post("minecraft/server-info", jsonData);
+		this.requests.post(SERVER_INFO, jsonData);
 	}
 
 	public Website getWebsite() throws FluxException {
-		final JsonObject json = this.requests.get("info");
+		final JsonObject json = this.requests.get(INFO);
 		return new Website(json);
 	}
 
@@ -104,6 +328,25 @@ public final class FluxAPI {
 		return new FilteredUserListBuilder(this);
 	}
 
+	/**
+	 * Query registered users with conditions the website can't filter on, like registration date or
+	 * profile field values. These are evaluated locally using user info, so configure a cache when
+	 * using this regularly.
+	 * @return Query builder
+	 */
+	public @NotNull UserQuery queryUsers() {
+		return new UserQuery(this);
+	}
+
+	/**
+	 * Load all registered users into an off-heap table for analytics queries. This makes
+	 * a request for all users, plus one request per flag and one per group.
+	 * @return Member table
+	 */
+	public @NotNull MemberTable loadMemberTable() throws FluxException {
+		return MemberTable.load(this);
+	}
+
 	public @NotNull Optional<FluxUser> getUser(final int id) throws FluxException {
 		final FluxUser user = getUserLazy(id);
 		if (user.exists()) {
@@ -203,24 +446,29 @@ public final class FluxAPI {
 	 */
 	@NotNull
 	public Optional<@NotNull Group> getGroup(final int id) throws FluxException {
-		final JsonObject response = this.requests.get("groups", "id", id);
+		if (this.userCache != null) {
+			return this.definitions.groups(this.getGroupsResponse()).stream().filter(g -> g.getId() == id).findFirst();
+		}
+
+		final JsonObject response = this.requests.get(GROUPS, "id", id);
 		final JsonArray jsonArray = response.getAsJsonArray("groups");
 		if (jsonArray.size() != 1) {
 			return Optional.empty();
 		} else {
-			return Optional.of(new Group(jsonArray.get(0).getAsJsonObject()));
+			return Optional.of(this.definitions.group(jsonArray.get(0).getAsJsonObject()));
 		}
 	}
 
 	/**
-	 * Get Flux Networks groups by name
+	 * Get Flux Networks groups by name. Always requested from the website, even with a user cache, so names
+	 * are matched the way the website matches them.
 	 * @param name Flux Networks groups name
 	 * @return List of groups with this name, empty if there are no groups with this name.
 	 */
 	@NotNull
 	public List<@NotNull Group> getGroup(@NotNull final String name) throws FluxException {
 		Objects.requireNonNull(name, "Group name is null");
-		final JsonObject response = this.requests.get("groups", "name", name);
+		final JsonObject response = this.requests.get(GROUPS, "name", name);
 		return groupListFromJsonArray(response.getAsJsonArray("groups"));
 	}
 
@@ -229,23 +477,43 @@ public final class FluxAPI {
 	 * @return list of groups
 	 */
 	public @NotNull List<Group> getAllGroups() throws FluxException {
-		final JsonObject response = this.requests.get("groups");
-		return groupListFromJsonArray(response.getAsJsonArray("groups"));
-
+		// The decoded list is shared while the response is cached
+		return new ArrayList<>(this.definitions.groups(this.getGroupsResponse()));
 	}
 
 	public int @NotNull[] getAllGroupIds() throws FluxException {
-		final JsonObject response = this.requests.get("groups");
+		final JsonObject response = this.getGroupsResponse();
 		return StreamSupport.stream(response.getAsJsonArray("groups").spliterator(), false)
 				.map(JsonElement::getAsJsonObject)
 				.mapToInt(o -> o.get("id").getAsInt())
 				.toArray();
 	}
 
+	/**
+	 * Request the group list with background priority, bypassing the cache, and store a changed response in the cache
+	 * @param previous Previous response to make the request conditional on, or null
+	 */
+	@NotNull RequestHandler.Response fetchGroupsResponse(final @Nullable RequestHandler.Response previous) throws FluxException {
+		final RequestHandler.Response response = this.requests.getConditional(GROUPS.withPriority(RequestPriority.BACKGROUND), previous);
+		if (!response.isNotModified() && this.userCache != null) {
+			//noinspection ConstantConditions
+			this.userCache.put(UserCache.GROUPS_KEY, response.json());
+		}
+		return response;
+	}
+
+	private @NotNull JsonObject getGroupsResponse() throws FluxException {
+		if (this.userCache != null) {
+			return this.userCache.get(UserCache.GROUPS_KEY, () -> this.requests.get(GROUPS));
+		} else {
+			return this.requests.get(GROUPS);
+		}
+	}
+
 	private @NotNull List<Group> groupListFromJsonArray(@NotNull final JsonArray array) {
 		return StreamSupport.stream(array.spliterator(), false)
 				.map(JsonElement::getAsJsonObject)
-				.map(Group::new)
+				.map(this.definitions::group)
 				.collect(Collectors.toList());
 	}
 
@@ -386,7 +654,7 @@ public final class FluxAPI {
 		});
 		final JsonObject json = new JsonObject();
 		json.add("roles", roles);
-		this.requests.post("discord/submit-role-list", json);
+		this.requests.post(SUBMIT_ROLE_LIST, json);
 	}
 
 	/**
@@ -407,7 +675,7 @@ public final class FluxAPI {
 		users.add(user);
 		final JsonObject json = new JsonObject();
 		json.add("users", users);
-		this.requests.post("discord/update-usernames", json);
+		this.requests.post(UPDATE_USERNAMES, json);
 	}
 
 	/**
@@ -439,7 +707,7 @@ public final class FluxAPI {
 
 		final JsonObject json = new JsonObject();
 		json.add("users", users);
-		this.requests.post("discord/update-usernames", json);
+		this.requests.post(UPDATE_USERNAMES, json);
 	}
 
 	private void verifyIntegration(final @NotNull IntegrationType type,
@@ -452,7 +720,7 @@ public final class FluxAPI {
 		data.addProperty("identifier", Objects.requireNonNull(identifier, "Identifier is null"));
 		data.addProperty("username", Objects.requireNonNull(username, "Username is null"));
 		try {
-			this.requests.post("integration/verify", data);
+			this.requests.post(VERIFY, data);
 		} catch (ApiError e) {
 			if (e.getError() == ApiError.INVALID_VALIDATE_CODE) {
 				throw new InvalidValidateCodeException();
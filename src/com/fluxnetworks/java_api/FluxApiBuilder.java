@@ -1,24 +1,51 @@
 package com.fluxnetworks.java_api;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.fluxnetworks.java_api.logger.ApiLogger;
 import com.fluxnetworks.java_api.logger.PrintStreamLogger;
 import com.fluxnetworks.java_api.logger.Slf4jLogger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.net.URL;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class FluxApiBuilder {
 
 	private static final int DEFAULT_TIMEOUT = 5000;
 	private static final String DEFAULT_USER_AGENT = "Flux-Java-API";
+	// Total length of cached responses, in characters
+	private static final int DEFAULT_CONDITIONAL_CACHE_CHARS = 4 * 1024 * 1024;
+	private static final int DEFAULT_PARALLEL_DECODING_THRESHOLD = 10_000;
+	private static final int DEFAULT_EXECUTOR_THREADS = 4;
 
 	private final @NotNull URL apiUrl;
 	private final @NotNull String apiKey;
 	private @NotNull String userAgent = DEFAULT_USER_AGENT;
 	private @Nullable ApiLogger debugLogger = null;
 	private int timeout = DEFAULT_TIMEOUT;
+	private long deadlineMillis = -1;
+	private @Nullable ScheduledExecutorService executor = null;
+	private @Nullable File cacheFile = null;
+	private long cacheTtl = -1;
+	private int cacheMaxEntries = -1;
+	private int conditionalCacheChars = DEFAULT_CONDITIONAL_CACHE_CHARS;
+	private int requestCompressionThreshold = -1;
+	private @Nullable BufferPool bufferPool = null;
+	private @Nullable ForkJoinPool decodingPool = null;
+	private int parallelDecodingThreshold = DEFAULT_PARALLEL_DECODING_THRESHOLD;
+	// No limits unless configured, by priority ordinal: interactive, normal, background
+	private int maxConcurrentRequests = Integer.MAX_VALUE;
+	private final int[] laneLimits = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+	private final int[] queueLimits = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+	// Set for sites in a FluxClientGroup
+	private @Nullable RequestDispatcher parentDispatcher = null;
+	private @Nullable RequestMetrics parentMetrics = null;
+	private @Nullable ConditionalResponseCache sharedConditionalResponses = null;
 
 	FluxApiBuilder(@NotNull URL apiUrl, @NotNull String apiKey) {
 		this.apiUrl = apiUrl;
@@ -59,8 +86,167 @@ public class FluxApiBuilder {
 		return this;
 	}
 
+	/**
+	 * Limit the total time of each request, including waiting to start, connecting, sending and receiving.
+	 * Unlike the timeout, which applies to connecting and to each read separately, a request that takes longer
+	 * than this is aborted. Disabled by default. A shorter deadline can be set for some calls using {@link Deadline}.
+	 * @param deadlineMillis Maximum time for a request in milliseconds, or -1 for no limit
+	 */
+	public @NotNull FluxApiBuilder withDeadlineMillis(final long deadlineMillis) {
+		this.deadlineMillis = deadlineMillis;
+		return this;
+	}
+
+	/**
+	 * Remember the ETag and Last-Modified headers of GET responses, and send them with the next request
+	 * to the same URL. If the website responds with 304 Not Modified, the previous response is returned.
+	 * Previous responses are kept up to a total of 4M characters, responses longer than an eighth of that
+	 * are not kept. Enabled by default.
+	 * @param conditionalRequests True to send conditional requests
+	 */
+	public @NotNull FluxApiBuilder withConditionalRequests(final boolean conditionalRequests) {
+		this.conditionalCacheChars = conditionalRequests ? DEFAULT_CONDITIONAL_CACHE_CHARS : 0;
+		return this;
+	}
+
+	/**
+	 * Gzip POST bodies larger than the specified size, like server info and console logs. The website
+	 * (or the web server in front of it) must support gzip-encoded requests. Disabled by default.
+	 * @param minimumBytes Minimum body size in bytes to compress, or -1 to disable compression
+	 */
+	public @NotNull FluxApiBuilder withRequestCompression(final int minimumBytes) {
+		this.requestCompressionThreshold = minimumBytes;
+		return this;
+	}
+
+	/**
+	 * Buffer pool used for reading responses and writing request bodies. Sharing a pool between
+	 * multiple API instances limits the total memory kept for buffers.
+	 * @param bufferPool Buffer pool, or null to create a new pool with default settings
+	 */
+	public @NotNull FluxApiBuilder withBufferPool(final @Nullable BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+		return this;
+	}
+
+	/**
+	 * Decode user lists with at least the specified number of users in parallel. By default, the common
+	 * fork-join pool is used for lists of 10000 users or more.
+	 * @param pool Pool to decode in, or null to use {@link ForkJoinPool#commonPool()}
+	 * @param threshold Minimum number of users to decode in parallel, or -1 to always decode on the calling thread
+	 */
+	public @NotNull FluxApiBuilder withParallelDecoding(final @Nullable ForkJoinPool pool, final int threshold) {
+		this.decodingPool = pool;
+		this.parallelDecodingThreshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Maximum number of requests made at the same time. Further requests wait, with requests with a
+	 * higher {@link RequestPriority} starting first. Not limited by default.
+	 * @param maxConcurrentRequests Maximum number of concurrent requests, or -1 for no limit
+	 */
+	public @NotNull FluxApiBuilder withMaxConcurrentRequests(final int maxConcurrentRequests) {
+		this.maxConcurrentRequests = limit(maxConcurrentRequests);
+		return this;
+	}
+
+	/**
+	 * Limits for requests with a priority, for example to keep bulk requests from using all concurrent
+	 * requests. Not limited by default.
+	 * @param priority Request priority
+	 * @param maxConcurrent Maximum number of running requests with this priority, or -1 for no limit
+	 * @param maxQueued Maximum number of waiting requests with this priority, further requests throw a {@link FluxException},
+	 *                  or -1 for no limit
+	 */
+	public @NotNull FluxApiBuilder withPriorityLimits(final @NotNull RequestPriority priority, final int maxConcurrent, final int maxQueued) {
+		Objects.requireNonNull(priority, "Priority is null");
+		this.laneLimits[priority.ordinal()] = limit(maxConcurrent);
+		this.queueLimits[priority.ordinal()] = limit(maxQueued);
+		return this;
+	}
+
+	private static int limit(final int limit) {
+		return limit == -1 ? Integer.MAX_VALUE : limit;
+	}
+
+	/**
+	 * Executor used for background work, like refreshing cached values and prefetching. By default, a pool of
+	 * 4 daemon threads is used.
+	 * @param executor Executor, or null to use the default
+	 */
+	public @NotNull FluxApiBuilder withExecutor(final @Nullable ScheduledExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Cache user info and groups, and store the cache in a file so it survives restarts.
+	 * Values loaded from the file are refreshed in the background the first time they are used.
+	 * @param file File to store the cache in, created if it doesn't exist
+	 * @param ttlMillis Time after which a cached value is no longer used
+	 */
+	public @NotNull FluxApiBuilder withPersistentCache(final @NotNull File file, final long ttlMillis) {
+		this.cacheFile = Objects.requireNonNull(file, "Cache file is null");
+		this.cacheTtl = ttlMillis;
+		this.cacheMaxEntries = -1;
+		return this;
+	}
+
+	/**
+	 * Cache user info and groups in memory. Also required for {@link FluxAPI#prefetch(java.util.UUID...)}.
+	 * @param ttlMillis Time after which a cached value is no longer used
+	 */
+	public @NotNull FluxApiBuilder withUserCache(final long ttlMillis) {
+		return this.withUserCache(ttlMillis, -1);
+	}
+
+	/**
+	 * Cache user info and groups in memory, keeping at most the specified number of entries.
+	 * When the cache is full, the oldest entries are removed.
+	 * @param ttlMillis Time after which a cached value is no longer used
+	 * @param maxEntries Maximum number of cached values, or -1 for no limit
+	 */
+	public @NotNull FluxApiBuilder withUserCache(final long ttlMillis, final int maxEntries) {
+		this.cacheFile = null;
+		this.cacheTtl = ttlMillis;
+		this.cacheMaxEntries = maxEntries;
+		return this;
+	}
+
+	/**
+	 * Make requests through a dispatcher shared with other sites, add metrics to the shared metrics and keep
+	 * conditional responses in the shared cache
+	 * @param conditionalResponses Shared cache, or null to not make conditional requests
+	 */
+	@NotNull FluxApiBuilder withParent(final @NotNull RequestDispatcher dispatcher, final @NotNull RequestMetrics metrics,
+									   final @Nullable ConditionalResponseCache conditionalResponses) {
+		this.parentDispatcher = Objects.requireNonNull(dispatcher, "Dispatcher is null");
+		this.parentMetrics = Objects.requireNonNull(metrics, "Metrics is null");
+		this.sharedConditionalResponses = conditionalResponses;
+		return this;
+	}
+
 	public @NotNull FluxAPI build() {
-		return new FluxAPI(new RequestHandler(this.apiUrl, this.apiKey, this.userAgent, this.debugLogger, this.timeout));
+		final ScheduledExecutorService executor = this.executor != null
+				? this.executor
+				: Executors.newScheduledThreadPool(DEFAULT_EXECUTOR_THREADS, new ThreadFactoryBuilder()
+						.setNameFormat("Flux-Java-API-%d")
+						.setDaemon(true)
+						.build());
+		final DefinitionRegistry definitions = new DefinitionRegistry();
+		final UserCache userCache = this.cacheTtl != -1
+				? new UserCache(this.cacheFile, this.cacheTtl, this.cacheMaxEntries, definitions, executor)
+				: null;
+		final BufferPool bufferPool = this.bufferPool != null ? this.bufferPool : new BufferPool();
+		final RequestDispatcher dispatcher = new RequestDispatcher(this.maxConcurrentRequests, this.laneLimits, this.queueLimits, this.parentDispatcher);
+		final ConditionalResponseCache conditionalResponses = this.parentDispatcher != null
+				? this.sharedConditionalResponses
+				: this.conditionalCacheChars > 0 ? new ConditionalResponseCache(this.conditionalCacheChars) : null;
+		final RequestHandler requests = new RequestHandler(this.apiUrl, this.apiKey, this.userAgent, this.debugLogger, this.timeout,
+				conditionalResponses, this.requestCompressionThreshold, bufferPool, dispatcher, this.parentMetrics, executor, this.deadlineMillis);
+		final ForkJoinPool decodingPool = this.decodingPool != null ? this.decodingPool : ForkJoinPool.commonPool();
+		return new FluxAPI(requests, executor, userCache, definitions, decodingPool, this.parallelDecodingThreshold);
 	}
 
 }
@@ -0,0 +1,157 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * API instances for multiple websites that share one executor, buffer pool and request limit.
+ *
+ * <p>Each site has its own API key, base URL, user cache and metrics, but no threads of its own. Responses
+ * kept for conditional requests are in one cache for the whole group, so adding sites doesn't add to its
+ * size. The user cache and the group and field definitions are kept per site, because ids differ between
+ * websites. The user cache can be bounded with {@link FluxClientGroupBuilder#withUserCache(long, int)},
+ * definitions are bounded by what the website has.</p>
+ *
+ * <p>Each site can make a limited number of concurrent requests, so one busy or slow site can't delay
+ * requests for the other sites. Within the group-wide limit, requests with a higher {@link RequestPriority}
+ * start first, regardless of their site. Sites with waiting requests of the same priority take turns.</p>
+ *
+ * <p>Metrics for each site are available from {@link FluxAPI#getMetrics()}, and are added to the group's
+ * {@link #getMetrics()}.</p>
+ *
+ * @see FluxClientGroup#builder()
+ */
+public final class FluxClientGroup implements AutoCloseable {
+
+	// By priority ordinal: interactive, normal, background
+	private static final int[] SITE_QUEUE_LIMITS = { 256, 256, 64 };
+
+	private final @NotNull String userAgent;
+	private final int timeout;
+	private final long deadlineMillis;
+	private final @NotNull ScheduledExecutorService executor;
+	private final boolean ownsExecutor;
+	private final @NotNull BufferPool bufferPool;
+	private final int maxConcurrentRequestsPerSite;
+	private final long cacheTtl;
+	private final int cacheMaxEntries;
+	private final @NotNull RequestDispatcher dispatcher;
+	private final @NotNull RequestMetrics metrics;
+	private final @Nullable ConditionalResponseCache conditionalResponses;
+
+	// Guarded by this
+	private final @NotNull Map<String, FluxAPI> sites = new LinkedHashMap<>();
+
+	FluxClientGroup(final @NotNull String userAgent, final int timeout, final long deadlineMillis,
+					final @NotNull ScheduledExecutorService executor, final boolean ownsExecutor,
+					final @NotNull BufferPool bufferPool, final int maxConcurrentRequests,
+					final int maxConcurrentRequestsPerSite, final long cacheTtl, final int cacheMaxEntries,
+					final int conditionalCacheChars) {
+		this.userAgent = userAgent;
+		this.timeout = timeout;
+		this.deadlineMillis = deadlineMillis;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.bufferPool = bufferPool;
+		this.maxConcurrentRequestsPerSite = maxConcurrentRequestsPerSite;
+		this.cacheTtl = cacheTtl;
+		this.cacheMaxEntries = cacheMaxEntries;
+		// Sites already bound how many requests can wait, so the group doesn't reject any
+		this.dispatcher = new RequestDispatcher(maxConcurrentRequests,
+				new int[] { maxConcurrentRequests, maxConcurrentRequests, Math.max(1, maxConcurrentRequests / 4) },
+				new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE });
+		this.metrics = new RequestMetrics(bufferPool, this.dispatcher);
+		this.conditionalResponses = conditionalCacheChars > 0 ? new ConditionalResponseCache(conditionalCacheChars) : null;
+	}
+
+	public static @NotNull FluxClientGroupBuilder builder() {
+		return new FluxClientGroupBuilder();
+	}
+
+	/**
+	 * Create an API instance for a website in this group
+	 * @param name Name to look up the site with
+	 * @param apiUrl API URL of the website
+	 * @param apiKey API key for the website
+	 * @throws IllegalArgumentException If there already is a site with this name
+	 */
+	public synchronized @NotNull FluxAPI addSite(final @NotNull String name, final @NotNull URL apiUrl, final @NotNull String apiKey) {
+		Objects.requireNonNull(name, "Name is null");
+		Objects.requireNonNull(apiUrl, "API URL is null");
+		Objects.requireNonNull(apiKey, "API key is null");
+		if (this.sites.containsKey(name)) {
+			throw new IllegalArgumentException("There already is a site named " + name);
+		}
+
+		final int perSite = this.maxConcurrentRequestsPerSite;
+		final FluxApiBuilder builder = FluxAPI.builder(apiUrl, apiKey)
+				.userAgent(this.userAgent)
+				.withTimeoutMillis(this.timeout)
+				.withDeadlineMillis(this.deadlineMillis)
+				.withExecutor(this.executor)
+				.withBufferPool(this.bufferPool)
+				.withMaxConcurrentRequests(perSite)
+				.withPriorityLimits(RequestPriority.INTERACTIVE, perSite, SITE_QUEUE_LIMITS[RequestPriority.INTERACTIVE.ordinal()])
+				.withPriorityLimits(RequestPriority.NORMAL, perSite, SITE_QUEUE_LIMITS[RequestPriority.NORMAL.ordinal()])
+				.withPriorityLimits(RequestPriority.BACKGROUND, Math.max(1, perSite / 2), SITE_QUEUE_LIMITS[RequestPriority.BACKGROUND.ordinal()])
+				.withParent(this.dispatcher, this.metrics, this.conditionalResponses);
+		if (this.cacheTtl != -1) {
+			builder.withUserCache(this.cacheTtl, this.cacheMaxEntries);
+		}
+
+		final FluxAPI api = builder.build();
+		this.sites.put(name, api);
+		return api;
+	}
+
+	/**
+	 * Remove a site from this group. Requests that are in progress for the site are not cancelled.
+	 * @return API instance for the site, or null if there is no site with this name
+	 */
+	public synchronized @Nullable FluxAPI removeSite(final @NotNull String name) {
+		return this.sites.remove(name);
+	}
+
+	/**
+	 * @return API instance for the site, or null if there is no site with this name
+	 */
+	public synchronized @Nullable FluxAPI getSite(final @NotNull String name) {
+		return this.sites.get(name);
+	}
+
+	/**
+	 * @return Copy of all sites by name, in the order they were added
+	 */
+	public synchronized @NotNull Map<String, FluxAPI> getSites() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(this.sites));
+	}
+
+	/**
+	 * @return Statistics for requests made by all sites in this group, including removed sites
+	 */
+	public @NotNull RequestMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	public @NotNull BufferPool getBufferPool() {
+		return this.bufferPool;
+	}
+
+	/**
+	 * Shut down the executor if it was created by the group. The sites should not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (this.ownsExecutor) {
+			this.executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class FluxClientGroupBuilder {
+
+	private static final int DEFAULT_TIMEOUT = 5000;
+	private static final String DEFAULT_USER_AGENT = "Flux-Java-API";
+	private static final int DEFAULT_EXECUTOR_THREADS = 4;
+	private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+	private static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_SITE = 4;
+	private static final int DEFAULT_CONDITIONAL_CACHE_CHARS = 4 * 1024 * 1024;
+
+	private @NotNull String userAgent = DEFAULT_USER_AGENT;
+	private int timeout = DEFAULT_TIMEOUT;
+	private long deadlineMillis = -1;
+	private @Nullable ScheduledExecutorService executor = null;
+	private @Nullable BufferPool bufferPool = null;
+	private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+	private int maxConcurrentRequestsPerSite = DEFAULT_MAX_CONCURRENT_REQUESTS_PER_SITE;
+	private long cacheTtl = -1;
+	private int cacheMaxEntries = -1;
+	private int conditionalCacheChars = DEFAULT_CONDITIONAL_CACHE_CHARS;
+
+	FluxClientGroupBuilder() {
+	}
+
+	public @NotNull FluxClientGroupBuilder userAgent(final @NotNull String userAgent) {
+		this.userAgent = Objects.requireNonNull(userAgent, "User agent is null");
+		return this;
+	}
+
+	public @NotNull FluxClientGroupBuilder withTimeoutMillis(final int timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * @see FluxApiBuilder#withDeadlineMillis(long)
+	 */
+	public @NotNull FluxClientGroupBuilder withDeadlineMillis(final long deadlineMillis) {
+		this.deadlineMillis = deadlineMillis;
+		return this;
+	}
+
+	/**
+	 * Executor shared by all sites. By default, the group creates a pool of 4 daemon threads, which is shut
+	 * down by {@link FluxClientGroup#close()}.
+	 * @param executor Executor, or null to use the default
+	 */
+	public @NotNull FluxClientGroupBuilder withExecutor(final @Nullable ScheduledExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * @param bufferPool Buffer pool shared by all sites, or null to create a new pool with default settings
+	 */
+	public @NotNull FluxClientGroupBuilder withBufferPool(final @Nullable BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+		return this;
+	}
+
+	/**
+	 * Maximum number of requests made at the same time, by all sites together. Defaults to 16.
+	 */
+	public @NotNull FluxClientGroupBuilder withMaxConcurrentRequests(final int maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		return this;
+	}
+
+	/**
+	 * Maximum number of requests made at the same time for a single site, so a busy site can't use all
+	 * concurrent requests of the group. Defaults to 4.
+	 */
+	public @NotNull FluxClientGroupBuilder withMaxConcurrentRequestsPerSite(final int maxConcurrentRequests) {
+		this.maxConcurrentRequestsPerSite = maxConcurrentRequests;
+		return this;
+	}
+
+	/**
+	 * Give each site an in-memory user cache.
+	 * @param ttlMillis Time after which a cached value is no longer used
+	 * @param maxEntriesPerSite Maximum number of cached values for each site, or -1 for no limit
+	 * @see FluxApiBuilder#withUserCache(long, int)
+	 */
+	public @NotNull FluxClientGroupBuilder withUserCache(final long ttlMillis, final int maxEntriesPerSite) {
+		this.cacheTtl = ttlMillis;
+		this.cacheMaxEntries = maxEntriesPerSite;
+		return this;
+	}
+
+	/**
+	 * Size of the cache of previous responses for conditional requests, shared by all sites. Responses longer
+	 * than an eighth of the size are not kept. Defaults to 4M characters.
+	 * @param maxChars Total length of the kept responses, or 0 to not make conditional requests
+	 * @see FluxApiBuilder#withConditionalRequests(boolean)
+	 */
+	public @NotNull FluxClientGroupBuilder withConditionalCacheSize(final int maxChars) {
+		this.conditionalCacheChars = maxChars;
+		return this;
+	}
+
+	public @NotNull FluxClientGroup build() {
+		if (this.maxConcurrentRequestsPerSite > this.maxConcurrentRequests) {
+			throw new IllegalArgumentException("Maximum number of concurrent requests per site is higher than the total");
+		}
+		final boolean ownsExecutor = this.executor == null;
+		final ScheduledExecutorService executor = this.executor != null
+				? this.executor
+				: Executors.newScheduledThreadPool(DEFAULT_EXECUTOR_THREADS, new ThreadFactoryBuilder()
+						.setNameFormat("Flux-Java-API-group-%d")
+						.setDaemon(true)
+						.build());
+		final BufferPool bufferPool = this.bufferPool != null ? this.bufferPool : new BufferPool();
+		return new FluxClientGroup(this.userAgent, this.timeout, this.deadlineMillis, executor, ownsExecutor, bufferPool,
+				this.maxConcurrentRequests, this.maxConcurrentRequestsPerSite, this.cacheTtl, this.cacheMaxEntries,
+				this.conditionalCacheChars);
+	}
+
+}
@@ -0,0 +1,235 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Change on the website, found by a {@link FluxEventStream} or received by a {@link FluxWebhookReceiver}.
+ * Use {@code instanceof} to find the type of event.
+ */
+public abstract class FluxEvent {
+
+	private final long detectedAt;
+
+	FluxEvent() {
+		this.detectedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return Time the change was found, in milliseconds since the epoch. The change itself happened
+	 * at most one poll interval earlier.
+	 */
+	public long getDetectedAt() {
+		return this.detectedAt;
+	}
+
+	/**
+	 * Base class for events about a single user
+	 */
+	public abstract static class UserEvent extends FluxEvent {
+
+		private final int userId;
+		private final @NotNull String username;
+		private final @Nullable UUID uniqueId;
+
+		UserEvent(final int userId, final @NotNull String username, final @Nullable UUID uniqueId) {
+			this.userId = userId;
+			this.username = username;
+			this.uniqueId = uniqueId;
+		}
+
+		public int getUserId() {
+			return this.userId;
+		}
+
+		public @NotNull String getUsername() {
+			return this.username;
+		}
+
+		public @Nullable UUID getUniqueId() {
+			return this.uniqueId;
+		}
+
+	}
+
+	public static final class UserRegistered extends UserEvent {
+
+		UserRegistered(final int userId, final @NotNull String username, final @Nullable UUID uniqueId) {
+			super(userId, username, uniqueId);
+		}
+
+		@Override
+		public String toString() {
+			return "UserRegistered[id=" + this.getUserId() + ",username=" + this.getUsername() + "]";
+		}
+
+	}
+
+	public static final class UserBanned extends UserEvent {
+
+		UserBanned(final int userId, final @NotNull String username, final @Nullable UUID uniqueId) {
+			super(userId, username, uniqueId);
+		}
+
+		@Override
+		public String toString() {
+			return "UserBanned[id=" + this.getUserId() + ",username=" + this.getUsername() + "]";
+		}
+
+	}
+
+	public static final class UserUnbanned extends UserEvent {
+
+		UserUnbanned(final int userId, final @NotNull String username, final @Nullable UUID uniqueId) {
+			super(userId, username, uniqueId);
+		}
+
+		@Override
+		public String toString() {
+			return "UserUnbanned[id=" + this.getUserId() + ",username=" + this.getUsername() + "]";
+		}
+
+	}
+
+	/**
+	 * Profile, username or other details of a user changed. Only received by webhooks.
+	 */
+	public static final class UserUpdated extends UserEvent {
+
+		UserUpdated(final int userId, final @NotNull String username, final @Nullable UUID uniqueId) {
+			super(userId, username, uniqueId);
+		}
+
+		@Override
+		public String toString() {
+			return "UserUpdated[id=" + this.getUserId() + ",username=" + this.getUsername() + "]";
+		}
+
+	}
+
+	/**
+	 * A user received a notification. Only received by webhooks.
+	 */
+	public static final class UserNotified extends UserEvent {
+
+		private final @NotNull Notification notification;
+
+		UserNotified(final int userId, final @NotNull String username, final @Nullable UUID uniqueId,
+					 final @NotNull Notification notification) {
+			super(userId, username, uniqueId);
+			this.notification = notification;
+		}
+
+		public @NotNull Notification getNotification() {
+			return this.notification;
+		}
+
+		@Override
+		public String toString() {
+			return "UserNotified[id=" + this.getUserId() + ",username=" + this.getUsername() +
+					",message=" + this.notification.getMessage() + "]";
+		}
+
+	}
+
+	public static final class UserGroupsChanged extends UserEvent {
+
+		private final int @NotNull[] addedGroupIds;
+		private final int @NotNull[] removedGroupIds;
+
+		UserGroupsChanged(final int userId, final @NotNull String username, final @Nullable UUID uniqueId,
+						  final int @NotNull[] addedGroupIds, final int @NotNull[] removedGroupIds) {
+			super(userId, username, uniqueId);
+			this.addedGroupIds = addedGroupIds;
+			this.removedGroupIds = removedGroupIds;
+		}
+
+		public int @NotNull[] getAddedGroupIds() {
+			return this.addedGroupIds.clone();
+		}
+
+		public int @NotNull[] getRemovedGroupIds() {
+			return this.removedGroupIds.clone();
+		}
+
+		@Override
+		public String toString() {
+			return "UserGroupsChanged[id=" + this.getUserId() + ",username=" + this.getUsername() +
+					",added=" + Arrays.toString(this.addedGroupIds) + ",removed=" + Arrays.toString(this.removedGroupIds) + "]";
+		}
+
+	}
+
+	/**
+	 * Base class for events about a group
+	 */
+	public abstract static class GroupEvent extends FluxEvent {
+
+		private final @NotNull Group group;
+
+		GroupEvent(final @NotNull Group group) {
+			this.group = group;
+		}
+
+		/**
+		 * @return The group, or for removed groups the group as it was before it was removed
+		 */
+		public @NotNull Group getGroup() {
+			return this.group;
+		}
+
+	}
+
+	public static final class GroupAdded extends GroupEvent {
+
+		GroupAdded(final @NotNull Group group) {
+			super(group);
+		}
+
+		@Override
+		public String toString() {
+			return "GroupAdded[" + this.getGroup() + "]";
+		}
+
+	}
+
+	public static final class GroupRemoved extends GroupEvent {
+
+		GroupRemoved(final @NotNull Group group) {
+			super(group);
+		}
+
+		@Override
+		public String toString() {
+			return "GroupRemoved[" + this.getGroup() + "]";
+		}
+
+	}
+
+	/**
+	 * The name, order or staff status of a group changed
+	 */
+	public static final class GroupChanged extends GroupEvent {
+
+		private final @NotNull Group previous;
+
+		GroupChanged(final @NotNull Group previous, final @NotNull Group group) {
+			super(group);
+			this.previous = previous;
+		}
+
+		public @NotNull Group getPrevious() {
+			return this.previous;
+		}
+
+		@Override
+		public String toString() {
+			return "GroupChanged[" + this.previous + " -> " + this.getGroup() + "]";
+		}
+
+	}
+
+}
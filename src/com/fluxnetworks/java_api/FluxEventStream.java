@@ -0,0 +1,473 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Periodically polls the website for registrations, bans, group membership and group changes, and
+ * publishes a {@link FluxEvent} for each change since the previous poll.
+ *
+ * <p>Each poll requests the group list and the user list filtered by banned users and by each group.
+ * Lists are requested conditionally on the previous poll's response, so lists answered with 304 Not Modified
+ * are not decoded. Other lists are compared to the previous poll by a hash of their user ids first, so unchanged
+ * lists are not diffed. The first poll only records the current state.</p>
+ *
+ * <p>Polls run on a thread of their own, so they never occupy the API executor, and make their requests with
+ * {@link RequestPriority#BACKGROUND} priority. Events are delivered on the API executor.</p>
+ *
+ * <p>Every subscriber has a bounded buffer. While a subscriber's buffer is full, polls are skipped.
+ * Changes are found by comparing state, so no changes are lost, they are published by the first poll
+ * after the subscriber catches up. A single poll can add more events than there is room for.</p>
+ *
+ * <p>Users that were banned, unbanned or changed groups are removed from the {@link UserCache}.</p>
+ *
+ * @see FluxAPI#createEventStream(long, TimeUnit)
+ */
+public final class FluxEventStream {
+
+	private final @NotNull FluxAPI api;
+	private final @NotNull Executor executor;
+	private final @NotNull List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final @NotNull ScheduledExecutorService poller;
+	private final @NotNull LongAdder polls = new LongAdder();
+	private final @NotNull LongAdder skippedPolls = new LongAdder();
+
+	// Only accessed by the poll task, which never runs concurrently with itself
+	private boolean baseline = true;
+	private int maxUserId = -1;
+	private @Nullable RequestHandler.Response groupsResponse;
+	private @Nullable UserList allUsers;
+	private @Nullable UserList bannedUsers;
+	private final @NotNull Map<Integer, UserList> groupMembers = new HashMap<>();
+	private @NotNull Map<Integer, Group> groups = new HashMap<>();
+
+	FluxEventStream(final @NotNull FluxAPI api, final long interval, final @NotNull TimeUnit unit) {
+		this.api = Objects.requireNonNull(api, "API is null");
+		this.executor = api.getExecutor();
+		this.poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("Flux-Java-API-events")
+				.setDaemon(true)
+				.build());
+		this.poller.scheduleWithFixedDelay(this::pollIfReady, 0, interval, unit);
+	}
+
+	/**
+	 * Subscribe to events found after this call
+	 * @param listener Listener, called on the API executor with one event at a time, in order
+	 * @param bufferSize Maximum number of events waiting for this listener before polling is paused
+	 * @return Subscription, to cancel it
+	 */
+	public @NotNull Subscription subscribe(final @NotNull Listener listener, final int bufferSize) {
+		Objects.requireNonNull(listener, "Listener is null");
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		final Subscription subscription = new Subscription(listener, null, bufferSize);
+		this.subscriptions.add(subscription);
+		return subscription;
+	}
+
+	/**
+	 * Publish events found after each subscriber subscribes. Events wait in the subscriber's buffer until they
+	 * are requested, so polling is paused while a subscriber has a full buffer and no outstanding demand.
+	 * @param bufferSize Maximum number of events waiting for each subscriber before polling is paused
+	 * @return Publisher of events, delivering events on the API executor
+	 */
+	public @NotNull FluxPublisher<FluxEvent> publisher(final int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		return new FluxPublisher<>(this.api.getExecutor(), wakeUp -> {
+			final Subscription subscription = new Subscription(null, wakeUp, bufferSize);
+			this.subscriptions.add(subscription);
+			return new FluxPublisher.Source<FluxEvent>() {
+
+				@Override
+				public boolean fetch(final long demand, final @NotNull Consumer<FluxEvent> sink) {
+					subscription.take(demand, sink);
+					return true;
+				}
+
+				@Override
+				public void close(final @NotNull List<FluxEvent> undelivered) {
+					subscription.cancel();
+				}
+
+			};
+		}, -1, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return Number of completed polls, including failed polls
+	 */
+	public long getPollCount() {
+		return this.polls.sum();
+	}
+
+	/**
+	 * @return Number of polls skipped because a subscriber's buffer was full
+	 */
+	public long getSkippedPollCount() {
+		return this.skippedPolls.sum();
+	}
+
+	/**
+	 * Stop polling. A poll that is in progress finishes, events that were already found are still delivered.
+	 */
+	public void stop() {
+		this.poller.shutdown();
+	}
+
+	private void pollIfReady() {
+		for (final Subscription subscription : this.subscriptions) {
+			if (subscription.size.get() >= subscription.bufferSize) {
+				this.skippedPolls.increment();
+				return;
+			}
+		}
+
+		try {
+			this.poll();
+		} catch (final FluxException e) {
+			// Changes are found by the next poll
+		} catch (final RuntimeException e) {
+			final Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		} finally {
+			this.polls.increment();
+		}
+	}
+
+	private void poll() throws FluxException {
+		final List<FluxEvent> events = new ArrayList<>();
+		try {
+			this.pollGroups(events);
+			final Set<Integer> registered = this.pollRegistrations(events);
+			this.pollBans(events);
+			this.pollGroupMembers(events, registered);
+		} finally {
+			// Publish changes found before a failed request, their state has been recorded already
+			if (!this.baseline) {
+				this.publish(events);
+			}
+		}
+		this.baseline = false;
+	}
+
+	private void pollGroups(final @NotNull List<FluxEvent> events) throws FluxException {
+		final RequestHandler.Response response = this.api.fetchGroupsResponse(this.groupsResponse);
+		if (response.isNotModified()) {
+			return;
+		}
+		this.groupsResponse = response;
+
+		final Map<Integer, Group> current = new HashMap<>();
+		//noinspection ConstantConditions
+		for (final Group group : this.api.getDefinitions().groups(response.json())) {
+			current.put(group.getId(), group);
+			final Group previous = this.groups.get(group.getId());
+			if (previous == null) {
+				events.add(new FluxEvent.GroupAdded(group));
+			} else if (!previous.getName().equals(group.getName()) || previous.getOrder() != group.getOrder() || previous.isStaff() != group.isStaff()) {
+				events.add(new FluxEvent.GroupChanged(previous, group));
+			}
+		}
+		for (final Group previous : this.groups.values()) {
+			if (!current.containsKey(previous.getId())) {
+				events.add(new FluxEvent.GroupRemoved(previous));
+			}
+		}
+		this.groups = current;
+	}
+
+	private @NotNull Set<Integer> pollRegistrations(final @NotNull List<FluxEvent> events) throws FluxException {
+		final UserList users = fetch(this.api.getRegisteredUsers(), this.allUsers);
+		final Set<Integer> registered = new HashSet<>();
+		if (users != this.allUsers) {
+			for (int i = 0; i < users.ids.length; i++) {
+				if (users.ids[i] > this.maxUserId && !this.baseline) {
+					final JsonObject user = users.users[i];
+					events.add(new FluxEvent.UserRegistered(users.ids[i], username(user), uniqueId(user)));
+					registered.add(users.ids[i]);
+				}
+			}
+			if (users.ids.length > 0) {
+				this.maxUserId = Math.max(this.maxUserId, users.ids[users.ids.length - 1]);
+			}
+			this.allUsers = users;
+		}
+		return registered;
+	}
+
+	private void pollBans(final @NotNull List<FluxEvent> events) throws FluxException {
+		final UserList banned = fetch(this.api.getRegisteredUsers().withFilter(UserFilter.BANNED, true), this.bannedUsers);
+		if (banned != this.bannedUsers && this.bannedUsers != null) {
+			diff(this.bannedUsers, banned,
+					user -> events.add(this.invalidate(new FluxEvent.UserBanned(user.get("id").getAsInt(), username(user), uniqueId(user)))),
+					user -> events.add(this.invalidate(new FluxEvent.UserUnbanned(user.get("id").getAsInt(), username(user), uniqueId(user)))));
+		}
+		this.bannedUsers = banned;
+	}
+
+	private void pollGroupMembers(final @NotNull List<FluxEvent> events, final @NotNull Set<Integer> registered) throws FluxException {
+		// Changes per user, so a user moved between groups gets one event
+		final Map<Integer, MembershipChange> changes = new TreeMap<>();
+		this.groupMembers.keySet().retainAll(this.groups.keySet());
+		for (final int groupId : this.groups.keySet()) {
+			final UserList previous = this.groupMembers.get(groupId);
+			final UserList members = fetch(this.api.getRegisteredUsers().withFilter(UserFilter.GROUP_ID, groupId), previous);
+			if (members != previous && previous != null) {
+				diff(previous, members,
+						user -> changes.computeIfAbsent(user.get("id").getAsInt(), id -> new MembershipChange(user)).added.add(groupId),
+						user -> changes.computeIfAbsent(user.get("id").getAsInt(), id -> new MembershipChange(user)).removed.add(groupId));
+			}
+			this.groupMembers.put(groupId, members);
+		}
+
+		for (final Map.Entry<Integer, MembershipChange> e : changes.entrySet()) {
+			if (registered.contains(e.getKey())) {
+				// Groups of new users are part of the registration
+				continue;
+			}
+			final MembershipChange change = e.getValue();
+			events.add(this.invalidate(new FluxEvent.UserGroupsChanged(e.getKey(), username(change.user), uniqueId(change.user),
+					change.added.stream().mapToInt(Integer::intValue).toArray(),
+					change.removed.stream().mapToInt(Integer::intValue).toArray())));
+		}
+	}
+
+	/**
+	 * Request a user list, conditional on the previous list
+	 * @return The previous list if the users are the same, otherwise a new list
+	 */
+	private static @NotNull UserList fetch(final @NotNull FilteredUserListBuilder builder, final @Nullable UserList previous) throws FluxException {
+		final RequestHandler.Response response = builder.makeConditionalRequest(previous != null ? previous.response : null);
+		return UserList.of(response, previous);
+	}
+
+	private @NotNull FluxEvent invalidate(final @NotNull FluxEvent.UserEvent event) {
+		if (this.api.getUserCache() != null) {
+			new FluxUser(this.api, event.getUserId(), event.getUsername(), true, event.getUniqueId(), false, -1L).invalidateCache();
+		}
+		return event;
+	}
+
+	private void publish(final @NotNull List<FluxEvent> events) {
+		if (events.isEmpty()) {
+			return;
+		}
+		for (final Subscription subscription : this.subscriptions) {
+			for (final FluxEvent event : events) {
+				subscription.queue.add(event);
+			}
+			subscription.size.addAndGet(events.size());
+			subscription.scheduleDrain();
+		}
+	}
+
+	private static void diff(final @NotNull UserList previous, final @NotNull UserList current,
+							 final @NotNull UserConsumer added, final @NotNull UserConsumer removed) {
+		int i = 0;
+		int j = 0;
+		while (i < previous.ids.length || j < current.ids.length) {
+			if (j == current.ids.length || i < previous.ids.length && previous.ids[i] < current.ids[j]) {
+				removed.accept(previous.users[i++]);
+			} else if (i == previous.ids.length || current.ids[j] < previous.ids[i]) {
+				added.accept(current.users[j++]);
+			} else {
+				i++;
+				j++;
+			}
+		}
+	}
+
+	static @NotNull String username(final @NotNull JsonObject user) {
+		return user.get("username").getAsString();
+	}
+
+	static @Nullable UUID uniqueId(final @NotNull JsonObject user) {
+		if (!user.has("uuid")) {
+			return null;
+		}
+		final String uuid = user.get("uuid").getAsString();
+		return uuid == null || uuid.equals("none") || uuid.equals("") ? null : FluxAPI.websiteUuidToJavaUuid(uuid);
+	}
+
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called on the API executor for each event. Events for a subscription are delivered one at a time.
+		 */
+		void onEvent(@NotNull FluxEvent event);
+
+	}
+
+	public final class Subscription {
+
+		// Either a listener that events are pushed to, or a callback for a publisher that takes events
+		private final @Nullable Listener listener;
+		private final @Nullable Runnable wakeUp;
+		private final int bufferSize;
+		private final @NotNull Queue<FluxEvent> queue = new ConcurrentLinkedQueue<>();
+		private final @NotNull AtomicInteger size = new AtomicInteger();
+		private final @NotNull AtomicBoolean draining = new AtomicBoolean();
+		private volatile boolean cancelled;
+
+		private Subscription(final @Nullable Listener listener, final @Nullable Runnable wakeUp, final int bufferSize) {
+			this.listener = listener;
+			this.wakeUp = wakeUp;
+			this.bufferSize = bufferSize;
+		}
+
+		/**
+		 * @return Number of events waiting to be delivered
+		 */
+		public int getQueuedEvents() {
+			return this.size.get();
+		}
+
+		/**
+		 * Stop delivering events to this listener, including events that are waiting
+		 */
+		public void cancel() {
+			this.cancelled = true;
+			FluxEventStream.this.subscriptions.remove(this);
+			this.scheduleDrain();
+		}
+
+		private void scheduleDrain() {
+			if (this.wakeUp != null) {
+				this.wakeUp.run();
+				return;
+			}
+			if (this.draining.compareAndSet(false, true)) {
+				FluxEventStream.this.executor.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			FluxEvent event;
+			while ((event = this.queue.poll()) != null) {
+				this.size.decrementAndGet();
+				if (this.cancelled) {
+					continue;
+				}
+				try {
+					//noinspection ConstantConditions
+					this.listener.onEvent(event);
+				} catch (final RuntimeException e) {
+					final Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+			this.draining.set(false);
+			// Events added after the queue was empty, but before draining was reset
+			if (!this.queue.isEmpty()) {
+				this.scheduleDrain();
+			}
+		}
+
+		private void take(final long max, final @NotNull Consumer<FluxEvent> sink) {
+			FluxEvent event;
+			for (long i = 0; i < max && (event = this.queue.poll()) != null; i++) {
+				this.size.decrementAndGet();
+				sink.accept(event);
+			}
+		}
+
+	}
+
+	@FunctionalInterface
+	private interface UserConsumer {
+
+		void accept(@NotNull JsonObject user);
+
+	}
+
+	/**
+	 * User list sorted by id
+	 */
+	private static final class UserList {
+
+		// Latest response with these users, to make the next request conditional on
+		private @NotNull RequestHandler.Response response;
+		private final int @NotNull[] ids;
+		private final @NotNull JsonObject @NotNull[] users;
+		private final int hash;
+
+		private UserList(final @NotNull RequestHandler.Response response, final int @NotNull[] ids, final @NotNull JsonObject @NotNull[] users) {
+			this.response = response;
+			this.ids = ids;
+			this.users = users;
+			this.hash = Arrays.hashCode(ids);
+		}
+
+		/**
+		 * @return The previous list if the users are the same, otherwise a new list
+		 */
+		private static @NotNull UserList of(final @NotNull RequestHandler.Response response, final @Nullable UserList previous) {
+			if (previous != null && response.isNotModified()) {
+				return previous;
+			}
+
+			//noinspection ConstantConditions
+			final JsonArray array = response.json().getAsJsonArray("users");
+			final JsonObject[] users = new JsonObject[array.size()];
+			for (int i = 0; i < users.length; i++) {
+				users[i] = array.get(i).getAsJsonObject();
+			}
+			Arrays.sort(users, (a, b) -> Integer.compare(a.get("id").getAsInt(), b.get("id").getAsInt()));
+			final int[] ids = new int[users.length];
+			for (int i = 0; i < users.length; i++) {
+				ids[i] = users[i].get("id").getAsInt();
+			}
+
+			final UserList list = new UserList(response, ids, users);
+			if (previous != null && previous.hash == list.hash && Arrays.equals(previous.ids, list.ids)) {
+				previous.response = response;
+				return previous;
+			}
+			return list;
+		}
+
+	}
+
+	private static final class MembershipChange {
+
+		private final @NotNull JsonObject user;
+		private final @NotNull List<Integer> added = new ArrayList<>(1);
+		private final @NotNull List<Integer> removed = new ArrayList<>(1);
+
+		private MembershipChange(final @NotNull JsonObject user) {
+			this.user = user;
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Reactive Streams {@link Publisher} that only requests data from the website when subscribers have
+ * outstanding demand, so a slow subscriber slows down the requests instead of buffering everything.
+ *
+ * <p>Each subscriber gets its own {@link Source}. Sources are called on the API executor, one call at a
+ * time, whenever the subscriber has requested more elements than are buffered. Elements are delivered on
+ * the API executor as well.</p>
+ *
+ * <p>Elements that were fetched but not delivered when the subscription ends, because it was cancelled or
+ * failed, are passed back to the source in {@link Source#close(List)}.</p>
+ *
+ * @param <T> Element type
+ */
+public final class FluxPublisher<T> implements Publisher<T> {
+
+	private final @NotNull ScheduledExecutorService executor;
+	private final @NotNull SourceFactory<T> sourceFactory;
+	private final long retryDelayNanos;
+
+	/**
+	 * @param executor Executor to fetch and deliver elements on. Sources that block should get an executor of their own.
+	 * @param sourceFactory Creates a source for each subscriber
+	 * @param retryDelay Time to wait before fetching again when a source had no elements, or -1 to wait
+	 *                   until the source calls its wake-up callback
+	 * @param unit Time unit of the retry delay
+	 */
+	public FluxPublisher(final @NotNull ScheduledExecutorService executor, final @NotNull SourceFactory<T> sourceFactory,
+						 final long retryDelay, final @NotNull TimeUnit unit) {
+		this.executor = Objects.requireNonNull(executor, "Executor is null");
+		this.sourceFactory = Objects.requireNonNull(sourceFactory, "Source factory is null");
+		this.retryDelayNanos = retryDelay == -1 ? -1 : unit.toNanos(retryDelay);
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super T> subscriber) {
+		Objects.requireNonNull(subscriber, "Subscriber is null");
+		final DemandSubscription<T> subscription = new DemandSubscription<>(this.executor, subscriber, this.retryDelayNanos);
+		subscription.source = this.sourceFactory.create(subscription::schedule);
+		subscriber.onSubscribe(subscription);
+	}
+
+	@FunctionalInterface
+	public interface SourceFactory<T> {
+
+		/**
+		 * @param wakeUp Call when new elements may be available, if the source was empty
+		 */
+		@NotNull Source<T> create(@NotNull Runnable wakeUp);
+
+	}
+
+	public interface Source<T> {
+
+		/**
+		 * Add the next elements to the sink. May add more or fewer elements than requested, or none if there are
+		 * no elements right now. Extra elements are buffered until the subscriber requests them.
+		 * @param demand Number of elements the subscriber has requested, {@link Long#MAX_VALUE} for unbounded
+		 * @param sink Sink to add elements to
+		 * @return False if there are no more elements after the added elements
+		 */
+		boolean fetch(long demand, @NotNull Consumer<T> sink) throws FluxException;
+
+		/**
+		 * Called once when the subscription is cancelled, has failed or has completed
+		 * @param undelivered Elements added by {@link #fetch(long, Consumer)} that were not delivered, in order
+		 */
+		default void close(@NotNull List<T> undelivered) {
+		}
+
+	}
+
+	private static final class DemandSubscription<T> implements Subscription {
+
+		private final @NotNull ScheduledExecutorService executor;
+		private final @NotNull Subscriber<? super T> subscriber;
+		private final long retryDelayNanos;
+		private final @NotNull AtomicLong requested = new AtomicLong();
+		private final @NotNull AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile @Nullable Throwable invalidRequest;
+		private volatile boolean waiting;
+		private @Nullable Source<T> source;
+
+		// Only accessed by the drain loop
+		private final @NotNull Queue<T> buffer = new ArrayDeque<>();
+		private boolean exhausted;
+		private boolean done;
+
+		private DemandSubscription(final @NotNull ScheduledExecutorService executor, final @NotNull Subscriber<? super T> subscriber,
+								   final long retryDelayNanos) {
+			this.executor = executor;
+			this.subscriber = subscriber;
+			this.retryDelayNanos = retryDelayNanos;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				// Rule 3.9, signalled by the drain loop so signals stay serial
+				this.invalidRequest = new IllegalArgumentException("Requested " + n + " elements, must be positive");
+				this.schedule();
+				return;
+			}
+			this.requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+			this.schedule();
+		}
+
+		@Override
+		public void cancel() {
+			this.cancelled = true;
+			this.schedule();
+		}
+
+		private void schedule() {
+			if (this.wip.getAndIncrement() == 0) {
+				this.executor.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			int missed = 1;
+			while (true) {
+				if (this.done) {
+					return;
+				}
+				if (this.cancelled) {
+					this.finish();
+					return;
+				}
+				final Throwable invalidRequest = this.invalidRequest;
+				if (invalidRequest != null) {
+					this.finish();
+					this.subscriber.onError(invalidRequest);
+					return;
+				}
+
+				long requested = this.requested.get();
+				long emitted = 0;
+				T element;
+				while (emitted < requested && !this.cancelled && (element = this.buffer.poll()) != null) {
+					try {
+						this.subscriber.onNext(element);
+					} catch (final RuntimeException e) {
+						// Rule 2.13, the subscriber is broken
+						this.cancelled = true;
+						final Thread thread = Thread.currentThread();
+						thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+					}
+					emitted++;
+				}
+				if (emitted > 0 && requested != Long.MAX_VALUE) {
+					requested = this.requested.addAndGet(-emitted);
+				}
+
+				if (this.cancelled) {
+					continue;
+				}
+
+				if (this.buffer.isEmpty() && this.exhausted) {
+					this.finish();
+					this.subscriber.onComplete();
+					return;
+				}
+
+				if (requested > 0 && this.buffer.isEmpty() && !this.waiting) {
+					final boolean more;
+					try {
+						//noinspection ConstantConditions
+						more = this.source.fetch(requested, this.buffer::add);
+					} catch (final FluxException | RuntimeException e) {
+						this.finish();
+						this.subscriber.onError(e);
+						return;
+					}
+					this.exhausted = !more;
+					if (!this.buffer.isEmpty() || this.exhausted) {
+						// Deliver what was fetched
+						continue;
+					}
+					if (this.retryDelayNanos != -1) {
+						this.waiting = true;
+						this.executor.schedule(() -> {
+							this.waiting = false;
+							this.schedule();
+						}, this.retryDelayNanos, TimeUnit.NANOSECONDS);
+					}
+				}
+
+				missed = this.wip.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		private void finish() {
+			this.done = true;
+			final List<T> undelivered = new ArrayList<>(this.buffer);
+			this.buffer.clear();
+			if (this.source != null) {
+				this.source.close(undelivered);
+			}
+		}
+
+	}
+
+}
@@ -2,7 +2,6 @@ package com.fluxnetworks.java_api;
 
 import com.google.common.base.Preconditions;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.fluxnetworks.java_api.Notification.NotificationType;
 import com.fluxnetworks.java_api.exception.AlreadyHasOpenReportException;
@@ -12,25 +11,39 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 public final class FluxUser {
 
+	// TODO There's no way to do this right now, wait for aber
+	private static final Route USER_INFO = Route.of("????", RequestPriority.INTERACTIVE);
+	static final Route NOTIFICATIONS = Route.of("users/{id}/notifications");
+
 	@NotNull
 	private final FluxAPI api;
 	@NotNull
 	private final RequestHandler requests;
 
-	private int id; // -1 if not known
-	private @Nullable String username; // null if not known
-	private boolean uuidKnown;
-	private @Nullable UUID uuid; // null if not known or not present
-	private boolean discordIdKnown;
-	private long discordId; // -1 if not known or not present
-
-	@Nullable
-	private JsonObject userInfo;
+	// Identity passed to the constructor, values that aren't known are taken from the user info
+	private final int id; // -1 if not known
+	private final @Nullable String username; // null if not known
+	private final boolean uuidKnown;
+	private final @Nullable UUID uuid; // null if not known or not present
+	private final boolean discordIdKnown;
+	private final long discordId; // -1 if not known or not present
+
+	// Instances can be shared between threads. The snapshot is published through a volatile field, and at most one
+	// thread loads it at a time: the thread that sets 'loading' makes the request, others wait for its result.
+	private volatile @Nullable UserSnapshot userInfo;
+	private volatile @Nullable CompletableFuture<UserSnapshot> loading;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<FluxUser, CompletableFuture> LOADING =
+			AtomicReferenceFieldUpdater.newUpdater(FluxUser.class, CompletableFuture.class, "loading");
+	private static final AtomicReferenceFieldUpdater<FluxUser, UserSnapshot> USER_INFO_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(FluxUser.class, UserSnapshot.class, "userInfo");
 
 	/**
 	 * Create a Flux user. Only one of 'id', 'uuid', 'discordId' has to be provided.
@@ -65,26 +78,49 @@ public final class FluxUser {
 		this.discordId = discordId;
 	}
 
-	private void loadUserInfo() throws FluxException {
-		final JsonObject response;
-		// TODO There's no way to do this right now, wait for aber
+	private @NotNull UserSnapshot loadUserInfo(final @NotNull RequestPriority priority) throws FluxException {
+		final String type;
+		final Object value;
 		if (this.id != -1) {
-			response = this.requests.get("????", "id", this.id);
+			type = "id";
+			value = this.id;
 		} else if (this.uuidKnown && this.uuid != null) {
-			response = this.requests.get("????", "uuid", this.uuid);
+			type = "uuid";
+			value = this.uuid;
 		} else if (this.username != null) {
-			response = this.requests.get("????", "username", this.username);
+			type = "username";
+			value = this.username;
 		} else if (this.discordIdKnown && this.discordId > 0) {
-			response = this.requests.get("????", "discord_id", this.discordId);
+			type = "discord_id";
+			value = this.discordId;
 		} else {
 			throw new IllegalStateException("ID, uuid, and username not known for this player.");
 		}
 
+		final UserCache cache = this.api.getUserCache();
+		if (cache != null) {
+			return cache.get(UserCache.userKey(type, value), () -> this.fetchUserInfo(type, value, priority));
+		} else {
+			return this.fetchUserInfo(type, value, priority);
+		}
+	}
+
+	private @NotNull UserSnapshot fetchUserInfo(final @NotNull String type, final @NotNull Object value,
+												final @NotNull RequestPriority priority) throws FluxException {
+		final JsonObject response = this.requests.get(USER_INFO.withPriority(priority), type, value);
+
 		if (!response.get("exists").getAsBoolean()) {
 			throw new UserNotExistException();
 		}
 
-		this.userInfo = response;
+		final UserSnapshot snapshot = UserSnapshot.fromJson(response, this.api.getDefinitions());
+		final UserCache cache = this.api.getUserCache();
+		if (cache != null && !type.equals("id")) {
+			// Make the snapshot available for lookups by id as well
+			cache.put(UserCache.userKey("id", snapshot.getId()), snapshot);
+		}
+
+		return snapshot;
 	}
 
 	@NotNull
@@ -99,30 +135,45 @@ public final class FluxUser {
 	 * Calling this method will invalidate the cache and require making a new
 	 * API request. It will not make a new API request immediately. Calling
 	 * this method multiple times while the cache is already cleared has no
-	 * effect.
+	 * effect. If a {@link UserCache} is configured, the user is removed
+	 * from it as well.
 	 */
 	public void invalidateCache() {
+		final UserSnapshot snapshot = this.userInfo;
+		// A load that is in progress may have started before the change, don't publish its result
+		this.loading = null;
 		this.userInfo = null;
+		final UserCache cache = this.api.getUserCache();
+		if (cache != null) {
+			invalidate(cache, this.id, this.uuid, this.username, this.discordId);
+			if (snapshot != null) {
+				invalidate(cache, snapshot.getId(), snapshot.getUniqueId(), snapshot.getUsername(), snapshot.getDiscordId());
+			}
+		}
 	}
 
-	public int getId() throws FluxException {
-		if (this.id == -1) {
-			this.loadUserInfo();
-			//noinspection ConstantConditions
-			this.id = this.userInfo.get("id").getAsInt();
+	private static void invalidate(final @NotNull UserCache cache, final int id, final @Nullable UUID uuid,
+								   final @Nullable String username, final long discordId) {
+		if (id != -1) {
+			cache.invalidate(UserCache.userKey("id", id));
 		}
+		if (uuid != null) {
+			cache.invalidate(UserCache.userKey("uuid", uuid));
+		}
+		if (username != null) {
+			cache.invalidate(UserCache.userKey("username", username));
+		}
+		if (discordId > 0) {
+			cache.invalidate(UserCache.userKey("discord_id", discordId));
+		}
+	}
 
-		return this.id;
+	public int getId() throws FluxException {
+		return this.id != -1 ? this.id : this.getSnapshot().getId();
 	}
 
 	public @NotNull String getUsername() throws FluxException {
-		if (this.username == null) {
-			this.loadUserInfo();
-			//noinspection ConstantConditions
-			this.username = this.userInfo.get("username").getAsString();
-		}
-
-		return this.username;
+		return this.username != null ? this.username : this.getSnapshot().getUsername();
 	}
 
 	public void updateUsername(final @NotNull String username) throws FluxException {
@@ -132,125 +183,175 @@ public final class FluxUser {
 	}
 
 	public @NotNull Optional<@NotNull UUID> getUniqueId() throws FluxException {
-		if (!this.uuidKnown) {
-			this.loadUserInfo();
-			//noinspection ConstantConditions
-			if (this.userInfo.has("uuid")) {
-				final String uuidString = this.userInfo.get("uuid").getAsString();
-				if (uuidString == null ||
-						uuidString.equals("none") ||
-						uuidString.equals("")) {
-					this.uuid = null;
-				} else {
-					this.uuid = FluxAPI.websiteUuidToJavaUuid(uuidString);
-				}
-			} else {
-				this.uuid = null;
-			}
-			this.uuidKnown = true;
+		return Optional.ofNullable(this.uuidKnown ? this.uuid : this.getSnapshot().getUniqueId());
+	}
+
+	public @NotNull Optional<@NotNull Long> getDiscordId() throws FluxException {
+		final long discordId = this.discordIdKnown ? this.discordId : this.getSnapshot().getDiscordId();
+		return discordId > 0 ? Optional.of(discordId) : Optional.empty();
+	}
+
+	public boolean exists() throws FluxException {
+		try {
+			this.getSnapshot();
+		} catch (final UserNotExistException e) {
+			return false;
 		}
 
-		return Optional.ofNullable(this.uuid);
+		return true;
 	}
 
-	public @NotNull Optional<@NotNull Long> getDiscordId() throws FluxException {
-		if (!this.discordIdKnown) {
-			this.loadUserInfo();
-			//noinspection ConstantConditions
-			if (this.userInfo.has("discord_id")) {
-				this.discordId = this.userInfo.get("discord_id").getAsLong();
-			} else {
-				this.discordId = -1;
+	/**
+	 * @return All user info returned by the website, loading it if it hasn't been loaded yet. If another
+	 * thread is already loading it, waits for that thread instead of making another request.
+	 */
+	public @NotNull UserSnapshot getSnapshot() throws FluxException {
+		return this.getSnapshot(USER_INFO.getPriority());
+	}
+
+	/**
+	 * @param priority Priority of the request if the user info has to be loaded, for loading many users in bulk
+	 * @see #getSnapshot()
+	 */
+	@NotNull UserSnapshot getSnapshot(final @NotNull RequestPriority priority) throws FluxException {
+		final UserSnapshot snapshot = this.userInfo;
+		if (snapshot != null) {
+			return snapshot;
+		}
+
+		final CompletableFuture<UserSnapshot> future = new CompletableFuture<>();
+		while (true) {
+			@SuppressWarnings("unchecked")
+			final CompletableFuture<UserSnapshot> inFlight = LOADING.get(this);
+			if (inFlight != null) {
+				return awaitLoad(inFlight);
+			}
+			if (LOADING.compareAndSet(this, null, future)) {
+				break;
 			}
-			this.discordIdKnown = true;
 		}
 
-		return this.discordId > 0 ? Optional.of(this.discordId) : Optional.empty();
-	}
+		// Published by a thread that loaded it between the first check and setting 'loading'
+		final UserSnapshot published = this.userInfo;
+		if (published != null) {
+			LOADING.compareAndSet(this, future, null);
+			future.complete(published);
+			return published;
+		}
 
-	public boolean exists() throws FluxException {
-		if (this.userInfo == null) {
-			try {
-				loadUserInfo();
-			} catch (final UserNotExistException e) {
-				return false;
+		try {
+			final UserSnapshot loaded = this.loadUserInfo(priority);
+			// Published before 'loading' is cleared, so no thread can see neither and start another request
+			this.userInfo = loaded;
+			if (!LOADING.compareAndSet(this, future, null)) {
+				// Invalidated while loading, unless another thread has loaded it again since
+				USER_INFO_UPDATER.compareAndSet(this, loaded, null);
 			}
+			future.complete(loaded);
+			return loaded;
+		} catch (final FluxException | RuntimeException e) {
+			LOADING.compareAndSet(this, future, null);
+			future.completeExceptionally(e);
+			throw e;
 		}
+	}
 
-		return true;
+	/**
+	 * @return User info if it has been loaded or is in the user cache, or null. Never makes a request.
+	 */
+	@Nullable UserSnapshot getCachedSnapshot() {
+		final UserSnapshot snapshot = this.userInfo;
+		final UserCache cache = this.api.getUserCache();
+		if (snapshot != null || cache == null || this.id == -1) {
+			return snapshot;
+		}
+		final Object cached = cache.peek(UserCache.userKey("id", this.id));
+		return cached instanceof UserSnapshot ? (UserSnapshot) cached : null;
 	}
 
-	public @NotNull String getDisplayName() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
+	private static @NotNull UserSnapshot awaitLoad(final @NotNull CompletableFuture<UserSnapshot> future) throws FluxException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RequestCancelledException("Interrupted while waiting for user info", false, e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof FluxException) {
+				throw (FluxException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new FluxException(cause);
+			}
 		}
+	}
 
-		return this.userInfo.get("displayname").getAsString();
+	public @NotNull String getDisplayName() throws FluxException {
+		return this.getSnapshot().getDisplayName();
 	}
 
 	/**
 	 * @return The date the user registered on the website.
 	 */
 	public @NotNull Date getRegisteredDate() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		return new Date(this.userInfo.get("registered_timestamp").getAsLong() * 1000);
+		return new Date(this.getSnapshot().getRegisteredTimestamp() * 1000);
 	}
 
 	public @NotNull Date getLastOnline() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		return new Date(this.userInfo.get("last_online_timestamp").getAsLong() * 1000);
+		return new Date(this.getSnapshot().getLastOnlineTimestamp() * 1000);
 	}
 
 	/**
 	 * @return Whether this account is banned from the website.
 	 */
 	public boolean isBanned() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		return this.userInfo.get("banned").getAsBoolean();
+		return this.getSnapshot().isBanned();
 	}
 
 	public boolean isVerified() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		return this.userInfo.get("validated").getAsBoolean();
+		return this.getSnapshot().isVerified();
 	}
 
 	public @NotNull String getLanguage() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		return this.userInfo.get("language").getAsString();
+		return this.getSnapshot().getLanguage();
 	}
 
 	public @NotNull VerificationInfo getVerificationInfo() throws FluxException {
-		final boolean verified = isVerified();
-		//noinspection ConstantConditions
-		final JsonObject verification = this.userInfo.getAsJsonObject("verification");
-		return new VerificationInfo(verified, verification);
+		return this.getSnapshot().verificationInfo();
 	}
 
 	/**
 	 * @return True if the user is member of at least one staff group, otherwise false
 	 */
 	public boolean isStaff() throws FluxException {
-		for (final Group group : this.getGroups()) {
-			if (group.isStaff()) {
-				return true;
-			}
-		}
-		return false;
+		return this.getSnapshot().isStaff();
+	}
+
+	/**
+	 * @return True if the user is member of this group. Doesn't create any group objects.
+	 */
+	public boolean hasGroup(final int groupId) throws FluxException {
+		return this.getSnapshot().hasGroup(groupId);
+	}
+
+	/**
+	 * @param mask Groups to check, see {@link DefinitionRegistry#mask(int...)}
+	 * @return True if the user is member of at least one of the groups
+	 */
+	public boolean hasAnyGroup(final @NotNull GroupMask mask) throws FluxException {
+		Objects.requireNonNull(mask, "Group mask is null");
+		return this.getSnapshot().hasAnyGroup(mask);
+	}
+
+	/**
+	 * Empty if the user is not in any groups.
+	 *
+	 * @return Player's group with the highest order
+	 * @see #getPrimaryGroup()
+	 */
+	public @NotNull Optional<@NotNull Group> getHighestOrderGroup() throws FluxException {
+		return Optional.ofNullable(this.getSnapshot().getHighestOrderGroup());
 	}
 
 	/**
@@ -258,14 +359,8 @@ public final class FluxUser {
 	 * @see #getSortedGroups()
 	 */
 	public @NotNull Set<@NotNull Group> getGroups() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
 		return Collections.unmodifiableSet(
-				StreamSupport.stream(this.userInfo.getAsJsonArray("groups").spliterator(), false)
-						.map(JsonElement::getAsJsonObject)
-						.map(Group::new)
+				Arrays.stream(this.getSnapshot().groups())
 						.collect(Collectors.toSet()));
 	}
 
@@ -274,14 +369,8 @@ public final class FluxUser {
 	 * @see #getGroups()
 	 */
 	public @NotNull List<@NotNull Group> getSortedGroups() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
 		return Collections.unmodifiableList(
-				StreamSupport.stream(this.userInfo.getAsJsonArray("groups").spliterator(), false)
-						.map(JsonElement::getAsJsonObject)
-						.map(Group::new)
+				Arrays.stream(this.getSnapshot().groups())
 						.sorted()
 						.collect(Collectors.toList()));
 	}
@@ -294,13 +383,9 @@ public final class FluxUser {
 	 * @return Player's group with the lowest order
 	 */
 	public @NotNull Optional<@NotNull Group> getPrimaryGroup() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		final JsonArray groups = this.userInfo.getAsJsonArray("groups");
-		if (groups.size() > 0) {
-			return Optional.of(new Group(groups.get(0).getAsJsonObject()));
+		final Group[] groups = this.getSnapshot().groups();
+		if (groups.length > 0) {
+			return Optional.of(groups[0]);
 		} else {
 			return Optional.empty();
 		}
@@ -329,13 +414,22 @@ public final class FluxUser {
 	}
 
 	public int getNotificationCount() throws FluxException {
-		final JsonObject response = this.requests.get("users/" + this.getId() + "/notifications");
+		final JsonObject response = this.api.getPrefetched(NOTIFICATIONS, this.getId());
 		return response.getAsJsonArray("notifications").size();
 	}
 
 	public @NotNull List<Notification> getNotifications() throws FluxException {
-		final JsonObject response = this.requests.get("users/" + this.getId() + "/notifications");
+		return notifications(this.api.getPrefetched(NOTIFICATIONS, this.getId()));
+	}
+
+	/**
+	 * Request notifications from the website, never using a prefetched response
+	 */
+	@NotNull List<Notification> fetchNotifications() throws FluxException {
+		return notifications(this.requests.get(NOTIFICATIONS, this.getId()));
+	}
 
+	private static @NotNull List<Notification> notifications(final @NotNull JsonObject response) {
 		final List<Notification> notifications = new ArrayList<>();
 		response.getAsJsonArray("notifications").forEach((element) -> {
 			final String message = element.getAsJsonObject().get("message").getAsString();
@@ -443,30 +537,13 @@ public final class FluxUser {
 	}
 
 	public @NotNull Collection<@NotNull CustomProfileFieldValue> getProfileFields() throws FluxException {
-		if (this.userInfo == null) {
-			this.loadUserInfo();
-		}
-
-		if (!userInfo.has("profile_fields")) {
-			return Collections.emptyList();
-		}
-
-		final JsonObject fieldsJson = userInfo.getAsJsonObject("profile_fields");
-		final List<CustomProfileFieldValue> fieldValues = new ArrayList<>(fieldsJson.size());
-		for (final Map.Entry<String, JsonElement> e : fieldsJson.entrySet()) {
-			int id = Integer.parseInt(e.getKey());
-			final JsonObject values = e.getValue().getAsJsonObject();
-			fieldValues.add(new CustomProfileFieldValue(
-					new CustomProfileField(
-							id,
-							values.get("name").getAsString(),
-							CustomProfileFieldType.fromFluxTypeInt(values.get("type").getAsInt()),
-							values.get("public").getAsBoolean(),
-							values.get("required").getAsBoolean(),
-							values.get("description").getAsString()
-					),
-					values.get("value").getAsString()
-			));
+		// Fields and values must come from the same snapshot
+		final UserSnapshot userInfo = this.getSnapshot();
+		final CustomProfileField[] fields = userInfo.profileFields();
+		final String[] values = userInfo.profileFieldValues();
+		final List<CustomProfileFieldValue> fieldValues = new ArrayList<>(fields.length);
+		for (int i = 0; i < fields.length; i++) {
+			fieldValues.add(new CustomProfileFieldValue(fields[i], values[i]));
 		}
 
 		return fieldValues;
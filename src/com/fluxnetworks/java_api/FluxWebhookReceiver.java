@@ -0,0 +1,467 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.fluxnetworks.java_api.Notification.NotificationType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP endpoint for webhooks sent by the website, as an alternative to polling with a
+ * {@link FluxEventStream} or {@link NotificationWatcher}.
+ *
+ * <p>Webhooks are {@code POST} requests with a JSON body and three headers: {@value #TIMESTAMP_HEADER} with the
+ * time the webhook was sent in seconds since the epoch, {@value #DELIVERY_HEADER} with an id that is unique for
+ * each webhook, and {@value #SIGNATURE_HEADER} with the hex encoded HMAC-SHA256, keyed with the secret configured
+ * on the website, of {@code timestamp + "." + delivery id + "." + body}. Webhooks sent more than 5 minutes ago
+ * or in the future are rejected, and a delivery id that was already received is acknowledged without applying
+ * the webhook again, so a captured webhook can't be replayed. The body has a {@code type} and the changed
+ * {@code user} or {@code group}:</p>
+ * <ul>
+ *     <li>{@code user_registered}, {@code user_updated}, {@code user_banned}, {@code user_unbanned}</li>
+ *     <li>{@code user_groups_changed}, with {@code added_groups} and {@code removed_groups} id arrays</li>
+ *     <li>{@code user_notified}, with a {@code notification}</li>
+ *     <li>{@code group_added}, {@code group_changed}, {@code group_removed}</li>
+ * </ul>
+ *
+ * <p>Received changes are applied to the {@link UserCache} and {@link DefinitionRegistry} before the webhook is
+ * acknowledged, then published to listeners as {@link FluxEvent}s. Unknown types are acknowledged and ignored.</p>
+ *
+ * <p>Requests are handled by two threads of the receiver, bodies are limited to 64 KiB and must be received
+ * within 10 seconds. Listeners are called on the API executor, one event at a time, in the order the webhooks
+ * were received.</p>
+ *
+ * @see FluxAPI#createWebhookReceiver(InetSocketAddress, String, String)
+ */
+public final class FluxWebhookReceiver implements AutoCloseable {
+
+	public static final String SIGNATURE_HEADER = "X-Flux-Signature";
+	public static final String TIMESTAMP_HEADER = "X-Flux-Timestamp";
+	public static final String DELIVERY_HEADER = "X-Flux-Delivery";
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final int MAX_BODY_SIZE = 64 * 1024;
+	private static final long MAX_CLOCK_DIFFERENCE_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+	private static final long READ_TIMEOUT_MILLIS = 10_000;
+	private static final int THREADS = 2;
+	// Only needs to cover the accepted timestamps, older webhooks are rejected anyway
+	private static final int MAX_DELIVERY_IDS = 100_000;
+
+	private final @NotNull FluxAPI api;
+	private final @NotNull Executor executor;
+	private final @NotNull SecretKeySpec key;
+	private final @NotNull HttpServer server;
+	private final @NotNull ExecutorService serverExecutor;
+	private final @NotNull Cache<String, Boolean> deliveries = CacheBuilder.newBuilder()
+			.expireAfterWrite(MAX_CLOCK_DIFFERENCE_SECONDS * 2, TimeUnit.SECONDS)
+			.maximumSize(MAX_DELIVERY_IDS)
+			.build();
+	private final @NotNull List<FluxEventStream.Listener> listeners = new CopyOnWriteArrayList<>();
+	private final @NotNull Queue<FluxEvent> queue = new ConcurrentLinkedQueue<>();
+	private final @NotNull AtomicBoolean draining = new AtomicBoolean();
+	private final @NotNull LongAdder received = new LongAdder();
+	private final @NotNull LongAdder rejected = new LongAdder();
+	private final @NotNull LongAdder duplicates = new LongAdder();
+
+	FluxWebhookReceiver(final @NotNull FluxAPI api, final @NotNull InetSocketAddress address, final @NotNull String path,
+						final @NotNull String secret) throws IOException {
+		this.api = Objects.requireNonNull(api, "API is null");
+		this.executor = api.getExecutor();
+		Objects.requireNonNull(address, "Address is null");
+		Objects.requireNonNull(path, "Path is null");
+		if (Objects.requireNonNull(secret, "Secret is null").isEmpty()) {
+			throw new IllegalArgumentException("Secret is empty");
+		}
+		this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+		this.server = HttpServer.create(address, 0);
+		this.serverExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactoryBuilder()
+				.setNameFormat("Flux-Java-API-webhook-%d")
+				.setDaemon(true)
+				.build());
+		this.server.setExecutor(this.serverExecutor);
+		this.server.createContext(path, this::handle);
+		this.server.start();
+	}
+
+	public void addListener(final @NotNull FluxEventStream.Listener listener) {
+		this.listeners.add(Objects.requireNonNull(listener, "Listener is null"));
+	}
+
+	public void removeListener(final @NotNull FluxEventStream.Listener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * @return Address the receiver is listening on, with the actual port if port 0 was used
+	 */
+	public @NotNull InetSocketAddress getAddress() {
+		return this.server.getAddress();
+	}
+
+	/**
+	 * @return Number of accepted webhooks
+	 */
+	public long getReceivedCount() {
+		return this.received.sum();
+	}
+
+	/**
+	 * @return Number of rejected requests, because of a wrong method, missing or invalid signature, a timestamp
+	 * that is too old, or a body that is invalid, too large or too slow
+	 */
+	public long getRejectedCount() {
+		return this.rejected.sum();
+	}
+
+	/**
+	 * @return Number of webhooks with a delivery id that was already received, which were acknowledged but not applied
+	 */
+	public long getDuplicateCount() {
+		return this.duplicates.sum();
+	}
+
+	/**
+	 * Stop accepting webhooks. Events that were already received are still delivered.
+	 */
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.serverExecutor.shutdownNow();
+	}
+
+	private void handle(final @NotNull HttpExchange exchange) throws IOException {
+		try {
+			final int status = this.receive(exchange);
+			if (status != 204) {
+				this.rejected.increment();
+			}
+			exchange.sendResponseHeaders(status, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private int receive(final @NotNull HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			return 405;
+		}
+
+		final String signature = exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER);
+		final String timestamp = exchange.getRequestHeaders().getFirst(TIMESTAMP_HEADER);
+		final String delivery = exchange.getRequestHeaders().getFirst(DELIVERY_HEADER);
+		if (signature == null || timestamp == null || delivery == null) {
+			return 401;
+		}
+		try {
+			final long age = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - Long.parseLong(timestamp);
+			if (Math.abs(age) > MAX_CLOCK_DIFFERENCE_SECONDS) {
+				return 401;
+			}
+		} catch (final NumberFormatException e) {
+			return 401;
+		}
+
+		final String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (contentLength != null) {
+			try {
+				if (Long.parseLong(contentLength) > MAX_BODY_SIZE) {
+					return 413;
+				}
+			} catch (final NumberFormatException e) {
+				return 400;
+			}
+		}
+
+		final byte[] body;
+		try {
+			body = readBody(exchange.getRequestBody());
+		} catch (final ReadTimeoutException e) {
+			return 408;
+		}
+		if (body == null) {
+			return 413;
+		}
+
+		if (!this.verify(timestamp, delivery, body, signature)) {
+			return 401;
+		}
+
+		if (this.deliveries.asMap().putIfAbsent(delivery, Boolean.TRUE) != null) {
+			// Already applied, acknowledge it so the website doesn't send it again
+			this.duplicates.increment();
+			return 204;
+		}
+
+		final FluxEvent event;
+		try {
+			event = this.apply(JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject());
+		} catch (final RuntimeException e) {
+			// Not valid json, or a field is missing or has the wrong type. Not applied, so a retry isn't a duplicate.
+			this.deliveries.invalidate(delivery);
+			return 400;
+		}
+
+		this.received.increment();
+		if (event != null) {
+			this.queue.add(event);
+			this.scheduleDrain();
+		}
+		return 204;
+	}
+
+	private boolean verify(final @NotNull String timestamp, final @NotNull String delivery, final byte @NotNull[] body,
+						   @NotNull String signature) {
+		if (signature.startsWith("sha256=")) {
+			signature = signature.substring(7);
+		}
+		final byte[] expected;
+		try {
+			final Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(this.key);
+			mac.update((timestamp + "." + delivery + ".").getBytes(StandardCharsets.UTF_8));
+			expected = mac.doFinal(body);
+		} catch (final GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+		final byte[] actual = decodeHex(signature);
+		// Constant time comparison, so the signature can't be guessed byte by byte
+		return actual != null && MessageDigest.isEqual(expected, actual);
+	}
+
+	/**
+	 * Update caches for the change in the payload
+	 * @return Event for the change, or null if the type is unknown
+	 */
+	private @Nullable FluxEvent apply(final @NotNull JsonObject payload) {
+		final String type = payload.get("type").getAsString();
+		if (type.startsWith("user_")) {
+			final JsonObject user = payload.getAsJsonObject("user");
+			final int id = user.get("id").getAsInt();
+			final String username = FluxEventStream.username(user);
+			final UUID uuid = FluxEventStream.uniqueId(user);
+			final FluxEvent.UserEvent event;
+			switch (type) {
+				case "user_registered":
+					event = new FluxEvent.UserRegistered(id, username, uuid);
+					break;
+				case "user_updated":
+					event = new FluxEvent.UserUpdated(id, username, uuid);
+					break;
+				case "user_banned":
+					event = new FluxEvent.UserBanned(id, username, uuid);
+					break;
+				case "user_unbanned":
+					event = new FluxEvent.UserUnbanned(id, username, uuid);
+					break;
+				case "user_groups_changed":
+					event = new FluxEvent.UserGroupsChanged(id, username, uuid,
+							ids(payload.getAsJsonArray("added_groups")), ids(payload.getAsJsonArray("removed_groups")));
+					break;
+				case "user_notified":
+					final JsonObject notification = payload.getAsJsonObject("notification");
+					final JsonElement url = notification.get("url");
+					event = new FluxEvent.UserNotified(id, username, uuid, new Notification(
+							notification.get("message").getAsString(),
+							url == null || url.isJsonNull() ? null : url.getAsString(),
+							NotificationType.fromString(notification.get("type").getAsString())));
+					final UserCache cache = this.api.getUserCache();
+					if (cache != null) {
+						cache.invalidate(FluxUser.NOTIFICATIONS + ":" + id);
+					}
+					return event;
+				default:
+					return null;
+			}
+			new FluxUser(this.api, id, username, true, uuid, false, -1L).invalidateCache();
+			return event;
+		}
+
+		if (!type.startsWith("group_")) {
+			return null;
+		}
+		final DefinitionRegistry registry = this.api.getDefinitions();
+		final JsonObject groupJson = payload.getAsJsonObject("group");
+		final FluxEvent event;
+		switch (type) {
+			case "group_added":
+				event = new FluxEvent.GroupAdded(registry.group(groupJson));
+				break;
+			case "group_changed": {
+				final Group previous = registry.getGroup(groupJson.get("id").getAsInt());
+				final Group group = registry.group(groupJson);
+				// The previous definition is unknown if no user or group list containing it was loaded
+				event = new FluxEvent.GroupChanged(previous != null ? previous : group, group);
+				break;
+			}
+			case "group_removed": {
+				final Group removed = registry.removeGroup(groupJson.get("id").getAsInt());
+				event = new FluxEvent.GroupRemoved(removed != null ? removed : new Group(
+						groupJson.get("id").getAsInt(),
+						groupJson.get("name").getAsString(),
+						groupJson.get("order").getAsInt(),
+						groupJson.has("staff") && groupJson.get("staff").getAsBoolean()));
+				break;
+			}
+			default:
+				return null;
+		}
+		final UserCache cache = this.api.getUserCache();
+		if (cache != null) {
+			cache.invalidate(UserCache.GROUPS_KEY);
+		}
+		return event;
+	}
+
+	private void scheduleDrain() {
+		if (this.draining.compareAndSet(false, true)) {
+			this.executor.execute(this::drain);
+		}
+	}
+
+	private void drain() {
+		FluxEvent event;
+		while ((event = this.queue.poll()) != null) {
+			for (final FluxEventStream.Listener listener : this.listeners) {
+				try {
+					listener.onEvent(event);
+				} catch (final RuntimeException e) {
+					final Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		}
+		this.draining.set(false);
+		// Events added after the queue was empty, but before draining was reset
+		if (!this.queue.isEmpty()) {
+			this.scheduleDrain();
+		}
+	}
+
+	/**
+	 * @return Body, or null if it is larger than the maximum size
+	 * @throws ReadTimeoutException If the body wasn't received within the read timeout
+	 */
+	private static byte @Nullable[] readBody(final @NotNull InputStream in) throws IOException {
+		// The server reads from an interruptible channel, interrupting a blocked read closes the connection
+		final ReadTimeout timeout = new ReadTimeout(Thread.currentThread());
+		final ScheduledFuture<?> task = RequestHandler.WATCHDOG_TIMER.schedule(timeout::expire, READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				if (out.size() + read > MAX_BODY_SIZE) {
+					return null;
+				}
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} catch (final IOException e) {
+			if (timeout.finish()) {
+				throw new ReadTimeoutException(e);
+			}
+			throw e;
+		} finally {
+			task.cancel(false);
+			if (timeout.finish()) {
+				// Expired after the body was read, clear the interrupt so it doesn't affect the response
+				Thread.interrupted();
+			}
+		}
+	}
+
+	private static int @NotNull[] ids(final @NotNull JsonArray array) {
+		final int[] ids = new int[array.size()];
+		int i = 0;
+		for (final JsonElement element : array) {
+			ids[i++] = element.getAsInt();
+		}
+		return ids;
+	}
+
+	private static final class ReadTimeout {
+
+		private final @NotNull Thread thread;
+		// Guarded by this
+		private boolean reading = true;
+		private boolean expired;
+
+		private ReadTimeout(final @NotNull Thread thread) {
+			this.thread = thread;
+		}
+
+		private synchronized void expire() {
+			if (this.reading) {
+				this.expired = true;
+				this.thread.interrupt();
+			}
+		}
+
+		/**
+		 * Stop the timeout, after this the thread is no longer interrupted
+		 * @return True if the timeout expired while reading
+		 */
+		private synchronized boolean finish() {
+			this.reading = false;
+			return this.expired;
+		}
+
+	}
+
+	private static final class ReadTimeoutException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private ReadTimeoutException(final @NotNull IOException cause) {
+			super("Request body not received within " + READ_TIMEOUT_MILLIS + " ms", cause);
+		}
+
+	}
+
+	private static byte @Nullable[] decodeHex(final @NotNull String hex) {
+		if (hex.length() % 2 != 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			final int high = Character.digit(hex.charAt(i * 2), 16);
+			final int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (high == -1 || low == -1) {
+				return null;
+			}
+			bytes[i] = (byte) (high << 4 | low);
+		}
+		return bytes;
+	}
+
+}
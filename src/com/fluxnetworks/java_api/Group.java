@@ -15,10 +15,17 @@ public class Group implements Comparable<Group> {
 	private final boolean staff;
 
 	Group(@NotNull final JsonObject group) {
-		this.id = group.get("id").getAsInt();
-		this.name = group.get("name").getAsString();
-		this.order = group.get("order").getAsInt();
-		this.staff = group.has("staff") && group.get("staff").getAsBoolean();
+		this(group.get("id").getAsInt(),
+				group.get("name").getAsString(),
+				group.get("order").getAsInt(),
+				group.has("staff") && group.get("staff").getAsBoolean());
+	}
+
+	Group(final int id, @NotNull final String name, final int order, final boolean staff) {
+		this.id = id;
+		this.name = name;
+		this.order = order;
+		this.staff = staff;
 	}
 
 	public int getId() {
@@ -0,0 +1,47 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Set of groups to check users against with {@link UserSnapshot#hasAnyGroup(GroupMask)}. Create masks once
+ * and reuse them, checking a user against a mask created by the same {@link DefinitionRegistry} only
+ * compares bits.
+ *
+ * @see DefinitionRegistry#mask(int...)
+ */
+public final class GroupMask {
+
+	private final @NotNull DefinitionRegistry registry;
+	private final long @NotNull[] bits;
+	private final int @NotNull[] groupIds;
+
+	GroupMask(final @NotNull DefinitionRegistry registry, final long @NotNull[] bits, final int @NotNull[] groupIds) {
+		this.registry = registry;
+		this.bits = bits;
+		this.groupIds = groupIds;
+	}
+
+	@NotNull DefinitionRegistry registry() {
+		return this.registry;
+	}
+
+	long @NotNull[] bits() {
+		return this.bits;
+	}
+
+	int @NotNull[] groupIds() {
+		return this.groupIds;
+	}
+
+	public int @NotNull[] getGroupIds() {
+		return this.groupIds.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "GroupMask" + Arrays.toString(this.groupIds);
+	}
+
+}
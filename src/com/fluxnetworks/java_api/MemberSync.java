@@ -0,0 +1,232 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link UserCache} up to date with changes on the website, using a watermark of the last sync
+ * time and the highest known user id to tell which users are new or changed.
+ *
+ * <p>Only a sync with a filter for users changed since a timestamp, passed to
+ * {@link FluxAPI#createMemberSync(File, UserFilter)}, is incremental: the website only sends changed users.
+ * Without a filter, every sync is a full sync that requests the whole user list. New users are then detected
+ * by id, and changed users by the {@code registered_timestamp} and {@code last_online_timestamp} fields if the
+ * website includes them, so only those users are refreshed in the cache.</p>
+ *
+ * <p>The watermark is stored in a small file, so after a restart it isn't necessary to treat all users as new.</p>
+ */
+public final class MemberSync {
+
+	private static final int MAGIC = 0x464C5853; // FLXS
+	private static final byte FORMAT_VERSION = 1;
+
+	// Changes made just before the previous sync may not have been included in it, and the website's clock may differ
+	private static final long OVERLAP_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+
+	private final @NotNull FluxAPI api;
+	private final @Nullable File stateFile;
+	private final @Nullable UserFilter<Long> changedSinceFilter;
+
+	private long lastSync = -1; // Seconds, -1 if never synced
+	private int maxUserId = -1;
+
+	MemberSync(final @NotNull FluxAPI api, final @Nullable File stateFile, final @Nullable UserFilter<Long> changedSinceFilter) {
+		this.api = api;
+		this.stateFile = stateFile;
+		this.changedSinceFilter = changedSinceFilter;
+		if (stateFile != null && stateFile.exists()) {
+			try {
+				this.readState(stateFile);
+			} catch (final IOException e) {
+				// Start over with a full sync
+				this.lastSync = -1;
+				this.maxUserId = -1;
+			}
+		}
+	}
+
+	/**
+	 * @return Time of the last successful sync in seconds since the epoch, or -1 if there has been no sync
+	 */
+	public long getLastSync() {
+		return this.lastSync;
+	}
+
+	/**
+	 * @return Highest user id seen by the last successful sync, or -1 if there has been no sync
+	 */
+	public int getMaxUserId() {
+		return this.maxUserId;
+	}
+
+	/**
+	 * @return True if syncs after the first one only request changed users, false if each sync requests all users
+	 */
+	public boolean isIncremental() {
+		return this.changedSinceFilter != null;
+	}
+
+	/**
+	 * Find users that are new or changed since the last sync, and refresh them in the user cache.
+	 * Changed users that were cached are requested again, others are only removed from the cache.
+	 * The first sync treats all users as new. Without a changed-since filter, all users are requested from the
+	 * website on every sync.
+	 * @return Ids of new and changed users
+	 */
+	public synchronized @NotNull Result sync() throws FluxException {
+		final long started = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+		final boolean full = this.lastSync == -1;
+		final long since = this.lastSync - OVERLAP_SECONDS;
+
+		final FilteredUserListBuilder builder = this.api.getRegisteredUsers();
+		if (!full && this.changedSinceFilter != null) {
+			builder.withFilter(this.changedSinceFilter, since);
+		}
+		final JsonArray users = builder.makeRawRequest();
+
+		int[] newUsers = new int[16];
+		int newCount = 0;
+		int[] changedUsers = new int[16];
+		int changedCount = 0;
+		int maxUserId = this.maxUserId;
+
+		for (final JsonElement e : users) {
+			final JsonObject user = e.getAsJsonObject();
+			final int id = user.get("id").getAsInt();
+			maxUserId = Math.max(maxUserId, id);
+			if (full || id > this.maxUserId) {
+				if (newCount == newUsers.length) {
+					newUsers = Arrays.copyOf(newUsers, newCount * 2);
+				}
+				newUsers[newCount++] = id;
+			} else if (this.changedSinceFilter != null ||
+					timestamp(user, "last_online_timestamp") >= since ||
+					timestamp(user, "registered_timestamp") >= since) {
+				if (changedCount == changedUsers.length) {
+					changedUsers = Arrays.copyOf(changedUsers, changedCount * 2);
+				}
+				changedUsers[changedCount++] = id;
+				this.refresh(user, id);
+			}
+		}
+
+		this.lastSync = started;
+		this.maxUserId = maxUserId;
+		if (this.stateFile != null) {
+			try {
+				this.writeState(this.stateFile);
+			} catch (final IOException e) {
+				throw new FluxException("Unable to write sync state to " + this.stateFile, e);
+			}
+		}
+
+		return new Result(full, Arrays.copyOf(newUsers, newCount), Arrays.copyOf(changedUsers, changedCount));
+	}
+
+	private void refresh(final @NotNull JsonObject json, final int id) throws FluxException {
+		final UserCache cache = this.api.getUserCache();
+		if (cache == null) {
+			return;
+		}
+
+		final String idKey = UserCache.userKey("id", id);
+		final Object previous = cache.peek(idKey);
+		if (previous instanceof UserSnapshot) {
+			// The username or UUID may have changed, remove lookups by the old values too
+			final UserSnapshot snapshot = (UserSnapshot) previous;
+			new FluxUser(this.api, id, snapshot.getUsername(), true, snapshot.getUniqueId(), true, snapshot.getDiscordId()).invalidateCache();
+		}
+
+		final String username = json.get("username").getAsString();
+		final UUID uuid;
+		if (json.has("uuid")) {
+			final String uuidString = json.get("uuid").getAsString();
+			uuid = uuidString == null || uuidString.equals("none") || uuidString.equals("") ? null : FluxAPI.websiteUuidToJavaUuid(uuidString);
+		} else {
+			uuid = null;
+		}
+		final FluxUser user = new FluxUser(this.api, id, username, true, uuid, false, -1L);
+		user.invalidateCache();
+
+		if (previous != null) {
+			try {
+				user.getSnapshot(RequestPriority.BACKGROUND);
+			} catch (final UserNotExistException e) {
+				// Deleted since the user list was requested
+			}
+		}
+	}
+
+	private static long timestamp(final @NotNull JsonObject user, final @NotNull String name) {
+		final JsonElement e = user.get(name);
+		return e == null || e.isJsonNull() ? -1 : e.getAsLong();
+	}
+
+	private void readState(final @NotNull File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+				throw new IOException("Not a sync state file or unsupported version");
+			}
+			this.lastSync = in.readLong();
+			this.maxUserId = in.readInt();
+		}
+	}
+
+	private void writeState(final @NotNull File file) throws IOException {
+		final File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.writeLong(this.lastSync);
+			out.writeInt(this.maxUserId);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public static final class Result {
+
+		private final boolean full;
+		private final int @NotNull[] newUserIds;
+		private final int @NotNull[] changedUserIds;
+
+		private Result(final boolean full, final int @NotNull[] newUserIds, final int @NotNull[] changedUserIds) {
+			this.full = full;
+			this.newUserIds = newUserIds;
+			this.changedUserIds = changedUserIds;
+		}
+
+		/**
+		 * @return True if there was no previous sync, so all users are reported as new
+		 */
+		public boolean isFull() {
+			return this.full;
+		}
+
+		public int @NotNull[] getNewUserIds() {
+			return this.newUserIds.clone();
+		}
+
+		public int @NotNull[] getChangedUserIds() {
+			return this.changedUserIds.clone();
+		}
+
+	}
+
+}
@@ -0,0 +1,259 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Off-heap, column oriented copy of all registered users, for queries over the entire member list
+ * (like counting banned users, or users in a group) without creating an object per user.
+ *
+ * <p>Columns are direct buffers: user id, packed UUID, a byte of flags and a bitmap of groups per
+ * user. Scans are plain loops over these buffers.</p>
+ *
+ * <p>Filling the table makes one request for the full user list, one per flag and one per group,
+ * using the website's user list filters.</p>
+ *
+ * @see FluxAPI#loadMemberTable()
+ */
+public final class MemberTable {
+
+	public static final int BANNED = 1;
+	public static final int VERIFIED = 1 << 1;
+	public static final int DISCORD_LINKED = 1 << 2;
+	public static final int HAS_UUID = 1 << 3;
+
+	private final int capacity;
+	private int size;
+
+	private final @NotNull IntBuffer ids;
+	private final @NotNull LongBuffer uuidMost;
+	private final @NotNull LongBuffer uuidLeast;
+	private final @NotNull ByteBuffer flags;
+	// groupWords longs per row, bit n is set if the user is in group groupIds[n]
+	private final @NotNull LongBuffer groups;
+	private final int groupWords;
+	private final int @NotNull[] groupIds;
+
+	// Row for each user id, -1 if there is no user with that id
+	private @Nullable IntBuffer rowById;
+
+	MemberTable(final int capacity, final int @NotNull[] groupIds) {
+		this.capacity = capacity;
+		this.groupIds = groupIds.clone();
+		Arrays.sort(this.groupIds);
+		this.groupWords = Math.max(1, (this.groupIds.length + 63) / 64);
+
+		this.ids = allocate(capacity * 4).asIntBuffer();
+		this.uuidMost = allocate(capacity * 8).asLongBuffer();
+		this.uuidLeast = allocate(capacity * 8).asLongBuffer();
+		this.flags = allocate(capacity);
+		this.groups = allocate(capacity * 8 * this.groupWords).asLongBuffer();
+	}
+
+	private static @NotNull ByteBuffer allocate(final int bytes) {
+		return ByteBuffer.allocateDirect(Math.max(bytes, 1)).order(ByteOrder.nativeOrder());
+	}
+
+	static @NotNull MemberTable load(final @NotNull FluxAPI api) throws FluxException {
+		final int[] groupIds = api.getAllGroupIds();
+		final JsonArray users = api.getRegisteredUsers().makeRawRequest();
+
+		final MemberTable table = new MemberTable(users.size(), groupIds);
+		for (final JsonElement e : users) {
+			table.addRow(e.getAsJsonObject());
+		}
+		table.buildIdIndex();
+
+		table.setFlag(api.getRegisteredUsers().withFilter(UserFilter.BANNED, true).makeRawRequest(), BANNED);
+		table.setFlag(api.getRegisteredUsers().withFilter(UserFilter.VERIFIED, true).makeRawRequest(), VERIFIED);
+		table.setFlag(api.getRegisteredUsers().withFilter(UserFilter.DISCORD_LINKED, true).makeRawRequest(), DISCORD_LINKED);
+
+		for (final int groupId : groupIds) {
+			final JsonArray members = api.getRegisteredUsers().withFilter(UserFilter.GROUP_ID, groupId).makeRawRequest();
+			for (final JsonElement e : members) {
+				final int row = table.rowOf(e.getAsJsonObject().get("id").getAsInt());
+				if (row != -1) {
+					table.addToGroup(row, groupId);
+				}
+			}
+		}
+
+		return table;
+	}
+
+	private void addRow(final @NotNull JsonObject user) {
+		final int row = this.size++;
+		this.ids.put(row, user.get("id").getAsInt());
+		if (user.has("uuid")) {
+			final String uuid = user.get("uuid").getAsString();
+			if (uuid != null && uuid.length() == 32) {
+				this.uuidMost.put(row, parseHex(uuid, 0));
+				this.uuidLeast.put(row, parseHex(uuid, 16));
+				this.flags.put(row, (byte) HAS_UUID);
+			}
+		}
+	}
+
+	private void buildIdIndex() {
+		int maxId = 0;
+		for (int row = 0; row < this.size; row++) {
+			maxId = Math.max(maxId, this.ids.get(row));
+		}
+		final IntBuffer rowById = allocate((maxId + 1) * 4).asIntBuffer();
+		for (int i = 0; i <= maxId; i++) {
+			rowById.put(i, -1);
+		}
+		for (int row = 0; row < this.size; row++) {
+			rowById.put(this.ids.get(row), row);
+		}
+		this.rowById = rowById;
+	}
+
+	private void setFlag(final @NotNull JsonArray users, final int flag) {
+		for (final JsonElement e : users) {
+			final int row = this.rowOf(e.getAsJsonObject().get("id").getAsInt());
+			if (row != -1) {
+				this.flags.put(row, (byte) (this.flags.get(row) | flag));
+			}
+		}
+	}
+
+	private void addToGroup(final int row, final int groupId) {
+		final int bit = Arrays.binarySearch(this.groupIds, groupId);
+		final int index = row * this.groupWords + (bit >>> 6);
+		this.groups.put(index, this.groups.get(index) | (1L << bit));
+	}
+
+	private static long parseHex(final @NotNull String string, final int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + 16; i++) {
+			value = (value << 4) | Character.digit(string.charAt(i), 16);
+		}
+		return value;
+	}
+
+	/**
+	 * @return Number of users in this table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return Row for a user id, or -1 if the user is not in this table
+	 */
+	public int rowOf(final int userId) {
+		final IntBuffer rowById = this.rowById;
+		if (rowById == null || userId < 0 || userId >= rowById.capacity()) {
+			return -1;
+		}
+		return rowById.get(userId);
+	}
+
+	public int getId(final int row) {
+		return this.ids.get(row);
+	}
+
+	public @Nullable UUID getUniqueId(final int row) {
+		return this.hasFlags(row, HAS_UUID) ? new UUID(this.uuidMost.get(row), this.uuidLeast.get(row)) : null;
+	}
+
+	public boolean hasFlags(final int row, final int flags) {
+		return (this.flags.get(row) & flags) == flags;
+	}
+
+	public boolean isInGroup(final int row, final int groupId) {
+		final int bit = Arrays.binarySearch(this.groupIds, groupId);
+		return bit >= 0 && (this.groups.get(row * this.groupWords + (bit >>> 6)) & (1L << bit)) != 0;
+	}
+
+	/**
+	 * Count users that have all required flags and none of the excluded flags
+	 * @param required Flags users must have, like {@link #VERIFIED}
+	 * @param excluded Flags users must not have, like {@link #BANNED}
+	 */
+	public int count(final int required, final int excluded) {
+		final ByteBuffer flags = this.flags;
+		int count = 0;
+		for (int row = 0; row < this.size; row++) {
+			final int f = flags.get(row);
+			if ((f & required) == required && (f & excluded) == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Count users in a group
+	 * @param groupId Group id
+	 * @return Number of users in this group, 0 if the group is unknown
+	 */
+	public int countInGroup(final int groupId) {
+		final int bit = Arrays.binarySearch(this.groupIds, groupId);
+		if (bit < 0) {
+			return 0;
+		}
+		final LongBuffer groups = this.groups;
+		final int stride = this.groupWords;
+		final long mask = 1L << bit;
+		int count = 0;
+		for (int index = bit >>> 6, end = this.size * stride; index < end; index += stride) {
+			if ((groups.get(index) & mask) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Find users matching flags and, optionally, a group
+	 * @param required Flags users must have
+	 * @param excluded Flags users must not have
+	 * @param groupId Group users must be in, or -1 for any group
+	 * @return Ids of matching users
+	 */
+	public int @NotNull[] select(final int required, final int excluded, final int groupId) {
+		final int bit = groupId == -1 ? -1 : Arrays.binarySearch(this.groupIds, groupId);
+		if (groupId != -1 && bit < 0) {
+			return new int[0];
+		}
+
+		int[] result = new int[64];
+		int count = 0;
+		for (int row = 0; row < this.size; row++) {
+			final int f = this.flags.get(row);
+			if ((f & required) != required || (f & excluded) != 0) {
+				continue;
+			}
+			if (bit >= 0 && (this.groups.get(row * this.groupWords + (bit >>> 6)) & (1L << bit)) == 0) {
+				continue;
+			}
+			if (count == result.length) {
+				result = Arrays.copyOf(result, count * 2);
+			}
+			result[count++] = this.ids.get(row);
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * @return Approximate off-heap memory used by this table, in bytes
+	 */
+	public long getMemoryUsage() {
+		final long rows = this.capacity;
+		final long index = this.rowById != null ? this.rowById.capacity() * 4L : 0;
+		return rows * (4 + 8 + 8 + 1 + 8L * this.groupWords) + index;
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.fluxnetworks.java_api;
 
+import java.util.Objects;
+
 public class Notification {
 
 	private final String message;
@@ -24,6 +26,22 @@ public class Notification {
 		return this.type;
 	}
 
+	@Override
+	public boolean equals(final Object other) {
+		if (!(other instanceof Notification)) {
+			return false;
+		}
+		final Notification notification = (Notification) other;
+		return Objects.equals(this.message, notification.message) &&
+				Objects.equals(this.url, notification.url) &&
+				this.type == notification.type;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.message, this.url, this.type);
+	}
+
 	public enum NotificationType {
 
 		TAG,
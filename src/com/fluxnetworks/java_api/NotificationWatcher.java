@@ -0,0 +1,178 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically polls notifications for a set of users (usually online players), and calls
+ * listeners only for notifications that weren't there during the previous poll. Identical notifications
+ * are counted, a poll that finds one more of them than the previous poll reports it as new.
+ *
+ * <p>Every round polls the next batch of watched users, so with {@code n} watched users each
+ * user is polled once every {@code ceil(n / batchSize)} rounds.</p>
+ *
+ * @see FluxAPI#createNotificationWatcher(long, TimeUnit, int)
+ */
+public final class NotificationWatcher {
+
+	private final int batchSize;
+	private final @NotNull Map<Integer, WatchedUser> watched = new ConcurrentHashMap<>();
+	private final @NotNull Queue<WatchedUser> queue = new ConcurrentLinkedQueue<>();
+	private final @NotNull List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final @NotNull ScheduledFuture<?> task;
+
+	NotificationWatcher(final @NotNull FluxAPI api, final long interval, final @NotNull TimeUnit unit, final int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+		this.task = Objects.requireNonNull(api, "API is null").getExecutor().scheduleWithFixedDelay(this::pollBatch, interval, interval, unit);
+	}
+
+	public void addListener(final @NotNull Listener listener) {
+		this.listeners.add(Objects.requireNonNull(listener, "Listener is null"));
+	}
+
+	public void removeListener(final @NotNull Listener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Start polling notifications for this user. The first poll only records existing notifications,
+	 * listeners are called for notifications that appear after that.
+	 * @param user User to watch, the user id is loaded if it is not known yet
+	 */
+	public void watch(final @NotNull FluxUser user) throws FluxException {
+		final WatchedUser watchedUser = new WatchedUser(user.getId(), user);
+		if (this.watched.putIfAbsent(watchedUser.id, watchedUser) == null) {
+			this.queue.add(watchedUser);
+		}
+	}
+
+	public void unwatch(final @NotNull FluxUser user) throws FluxException {
+		this.watched.remove(user.getId());
+	}
+
+	/**
+	 * @return Number of notifications seen during the last poll, or empty if the user
+	 * is not watched or hasn't been polled yet
+	 */
+	public @NotNull OptionalInt getNotificationCount(final int userId) {
+		final WatchedUser watchedUser = this.watched.get(userId);
+		if (watchedUser == null || watchedUser.seen == null) {
+			return OptionalInt.empty();
+		}
+		return OptionalInt.of(watchedUser.seen.size());
+	}
+
+	/**
+	 * @return Notifications seen during the last poll, or empty if the user is not watched or hasn't been polled yet
+	 */
+	public @NotNull List<Notification> getNotifications(final int userId) {
+		final WatchedUser watchedUser = this.watched.get(userId);
+		if (watchedUser == null || watchedUser.seen == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(watchedUser.seen);
+	}
+
+	/**
+	 * Stop polling. Watched users and their notifications are kept.
+	 */
+	public void stop() {
+		this.task.cancel(false);
+	}
+
+	private void pollBatch() {
+		// Polled users are added back to the queue, don't poll them again in the same round
+		final int count = Math.min(this.batchSize, this.queue.size());
+		for (int i = 0; i < count; i++) {
+			final WatchedUser watchedUser = this.queue.poll();
+			if (watchedUser == null) {
+				return;
+			}
+
+			if (this.watched.get(watchedUser.id) != watchedUser) {
+				// No longer watched, drop from the queue
+				continue;
+			}
+
+			try {
+				this.poll(watchedUser);
+			} catch (final FluxException e) {
+				// Try again next time this user comes up
+			} catch (final RuntimeException e) {
+				final Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			} finally {
+				this.queue.add(watchedUser);
+			}
+		}
+	}
+
+	private void poll(final @NotNull WatchedUser watchedUser) throws FluxException {
+		// A prefetched response can be older than the previous poll
+		final List<Notification> notifications = watchedUser.user.fetchNotifications();
+		final List<Notification> previous = watchedUser.seen;
+		watchedUser.seen = new ArrayList<>(notifications);
+
+		if (previous == null) {
+			return;
+		}
+
+		// Identical notifications are common ("X replied to your thread"), only more of them than before are new
+		final Multiset<Notification> remaining = HashMultiset.create(previous);
+		final List<Notification> added = new ArrayList<>();
+		for (final Notification notification : notifications) {
+			if (!remaining.remove(notification)) {
+				added.add(notification);
+			}
+		}
+
+		if (!added.isEmpty()) {
+			for (final Listener listener : this.listeners) {
+				listener.onNewNotifications(watchedUser.user, added);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called on the API executor thread when new notifications are found for a watched user
+		 * @param user Watched user
+		 * @param notifications Notifications that were not present in the previous poll
+		 */
+		void onNewNotifications(@NotNull FluxUser user, @NotNull List<Notification> notifications);
+
+	}
+
+	private static class WatchedUser {
+
+		private final int id;
+		private final @NotNull FluxUser user;
+		private volatile @Nullable List<Notification> seen;
+
+		private WatchedUser(final int id, final @NotNull FluxUser user) {
+			this.id = id;
+			this.user = user;
+		}
+
+	}
+
+}
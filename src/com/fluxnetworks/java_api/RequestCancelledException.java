@@ -0,0 +1,31 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thrown when a request was aborted because its {@link Deadline} passed, it was cancelled, or the calling
+ * thread was interrupted. The thread's interrupt flag is kept.
+ */
+public class RequestCancelledException extends FluxException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean deadlineExceeded;
+
+	RequestCancelledException(@NotNull final String message, final boolean deadlineExceeded, @Nullable final Throwable cause) {
+		super(message);
+		this.deadlineExceeded = deadlineExceeded;
+		if (cause != null) {
+			this.initCause(cause);
+		}
+	}
+
+	/**
+	 * @return True if the request took longer than its deadline, false if it was cancelled or interrupted
+	 */
+	public boolean isDeadlineExceeded() {
+		return this.deadlineExceeded;
+	}
+
+}
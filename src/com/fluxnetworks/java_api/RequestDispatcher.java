@@ -0,0 +1,205 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent requests, in total and per {@link RequestPriority}. A request that can't
+ * start waits on the calling thread, and waiting requests of a higher priority are always started first.
+ * Each priority has a bounded number of waiting requests, further requests fail immediately.
+ *
+ * <p>A dispatcher can have a parent that is shared with other dispatchers, like the dispatchers of the
+ * sites in a {@link FluxClientGroup}. Requests then also wait for the parent's limits. Within a priority,
+ * the parent takes turns between the dispatchers that have waiting requests, so a site that queues many
+ * requests can't make the other sites wait until its queue is empty.</p>
+ */
+final class RequestDispatcher {
+
+	// Cancelling a deadline doesn't wake up waiting requests, so they check it regularly
+	private static final long CANCELLATION_CHECK_MILLIS = 100;
+
+	private final int maxConcurrent;
+	private final int @NotNull[] laneLimits;
+	private final int @NotNull[] queueLimits;
+	private final @Nullable RequestDispatcher parent;
+
+	// Guarded by this
+	private final int @NotNull[] running;
+	private final int @NotNull[] waiting;
+	// By priority ordinal: sites with waiting requests in the order of their turn, and how many requests each has waiting
+	private final @NotNull List<Deque<Object>> turns;
+	private final @NotNull List<Map<Object, Integer>> waitingBySite;
+	private int totalRunning;
+
+	/**
+	 * @param maxConcurrent Maximum number of requests running at the same time
+	 * @param laneLimits Maximum number of running requests for each priority, by ordinal
+	 * @param queueLimits Maximum number of waiting requests for each priority, by ordinal
+	 */
+	RequestDispatcher(final int maxConcurrent, final int @NotNull[] laneLimits, final int @NotNull[] queueLimits) {
+		this(maxConcurrent, laneLimits, queueLimits, null);
+	}
+
+	/**
+	 * @param parent Dispatcher whose limits apply as well, or null
+	 */
+	RequestDispatcher(final int maxConcurrent, final int @NotNull[] laneLimits, final int @NotNull[] queueLimits, final @Nullable RequestDispatcher parent) {
+		final int lanes = RequestPriority.values().length;
+		if (maxConcurrent <= 0) {
+			throw new IllegalArgumentException("Maximum number of concurrent requests must be positive");
+		}
+		if (laneLimits.length != lanes || queueLimits.length != lanes) {
+			throw new IllegalArgumentException("Expected limits for " + lanes + " priorities");
+		}
+		this.maxConcurrent = maxConcurrent;
+		this.laneLimits = laneLimits.clone();
+		this.queueLimits = queueLimits.clone();
+		this.running = new int[lanes];
+		this.waiting = new int[lanes];
+		this.turns = new ArrayList<>(lanes);
+		this.waitingBySite = new ArrayList<>(lanes);
+		for (int lane = 0; lane < lanes; lane++) {
+			this.turns.add(new ArrayDeque<>());
+			this.waitingBySite.add(new HashMap<>());
+		}
+		this.parent = parent;
+	}
+
+	/**
+	 * Wait until a request with this priority may start. {@link #release(RequestPriority)} must be called
+	 * when it has finished.
+	 * @param deadlineNanos {@link System#nanoTime()} to stop waiting at, or {@link Deadline#NONE}
+	 * @param deadline Deadline to stop waiting for if it is cancelled, or null
+	 * @throws FluxException If too many requests with this priority are waiting
+	 * @throws RequestCancelledException If the deadline passed, it was cancelled or the thread was interrupted
+	 */
+	void acquire(final @NotNull RequestPriority priority, final long deadlineNanos, final @Nullable Deadline deadline) throws FluxException {
+		this.acquire(priority, deadlineNanos, deadline, this);
+	}
+
+	/**
+	 * @param site Dispatcher the request comes from, to take turns with
+	 */
+	private void acquire(final @NotNull RequestPriority priority, final long deadlineNanos, final @Nullable Deadline deadline,
+						 final @NotNull Object site) throws FluxException {
+		this.acquireLocal(priority, deadlineNanos, deadline, site);
+		if (this.parent != null) {
+			boolean acquired = false;
+			try {
+				// Not holding this dispatcher's lock, so other requests can be released while waiting
+				this.parent.acquire(priority, deadlineNanos, deadline, this);
+				acquired = true;
+			} finally {
+				if (!acquired) {
+					this.releaseLocal(priority);
+				}
+			}
+		}
+	}
+
+	private synchronized void acquireLocal(final @NotNull RequestPriority priority, final long deadlineNanos, final @Nullable Deadline deadline,
+										   final @NotNull Object site) throws FluxException {
+		final int lane = priority.ordinal();
+		if (!this.canStart(lane, site)) {
+			if (this.waiting[lane] >= this.queueLimits[lane]) {
+				throw new FluxException("Too many " + priority + " requests waiting (" + this.waiting[lane] + ")");
+			}
+
+			this.waiting[lane]++;
+			if (this.waitingBySite.get(lane).merge(site, 1, Integer::sum) == 1) {
+				this.turns.get(lane).addLast(site);
+			}
+			boolean started = false;
+			try {
+				while (!this.canStart(lane, site)) {
+					if (deadline != null && deadline.isCancelled()) {
+						throw new RequestCancelledException("Cancelled while waiting to make a request", false, null);
+					}
+					long waitMillis = CANCELLATION_CHECK_MILLIS;
+					if (deadlineNanos != Deadline.NONE) {
+						final long remaining = deadlineNanos - System.nanoTime();
+						if (remaining <= 0) {
+							throw new RequestCancelledException("Deadline exceeded while waiting to make a request", true, null);
+						}
+						waitMillis = Math.min(waitMillis, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+					}
+					this.wait(waitMillis);
+				}
+				started = true;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RequestCancelledException("Interrupted while waiting to make a request", false, e);
+			} finally {
+				this.waiting[lane]--;
+				this.endTurn(lane, site, started);
+				// Requests with a lower priority may have been waiting for this one, or other sites for their turn
+				this.notifyAll();
+			}
+		}
+
+		this.running[lane]++;
+		this.totalRunning++;
+	}
+
+	void release(final @NotNull RequestPriority priority) {
+		if (this.parent != null) {
+			this.parent.release(priority);
+		}
+		this.releaseLocal(priority);
+	}
+
+	private synchronized void releaseLocal(final @NotNull RequestPriority priority) {
+		this.running[priority.ordinal()]--;
+		this.totalRunning--;
+		this.notifyAll();
+	}
+
+	/**
+	 * Stop waiting for a request of the site. If it started, the site's turn is over and it goes to the back.
+	 */
+	private void endTurn(final int lane, final @NotNull Object site, final boolean started) {
+		final Map<Object, Integer> counts = this.waitingBySite.get(lane);
+		final Deque<Object> turns = this.turns.get(lane);
+		final int remaining = counts.get(site) - 1;
+		if (remaining == 0) {
+			counts.remove(site);
+			turns.remove(site);
+		} else {
+			counts.put(site, remaining);
+			if (started && turns.peekFirst() == site) {
+				turns.addLast(turns.removeFirst());
+			}
+		}
+	}
+
+	private boolean canStart(final int lane, final @NotNull Object site) {
+		if (this.totalRunning >= this.maxConcurrent || this.running[lane] >= this.laneLimits[lane]) {
+			return false;
+		}
+		// Only the site whose turn it is can start, if any site has requests waiting with this priority
+		final Object turn = this.turns.get(lane).peekFirst();
+		if (turn != null && turn != site) {
+			return false;
+		}
+		// Let waiting requests with a higher priority go first, unless their own limit stops them
+		for (int higher = 0; higher < lane; higher++) {
+			if (this.waiting[higher] > 0 && this.running[higher] < this.laneLimits[higher]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	synchronized int getWaiting(final @NotNull RequestPriority priority) {
+		return this.waiting[priority.ordinal()];
+	}
+
+}
@@ -1,9 +1,14 @@
 package com.fluxnetworks.java_api;
 
-import com.google.common.base.Preconditions;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
 import com.fluxnetworks.java_api.exception.ApiDisabledException;
 import com.fluxnetworks.java_api.logger.ApiLogger;
 import org.jetbrains.annotations.NotNull;
@@ -13,27 +18,64 @@ import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 public class RequestHandler {
 
+	private static final ThreadLocal<StringBuilder> URL_BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+	private static final TypeAdapter<JsonElement> JSON_ELEMENT_ADAPTER = FluxAPI.GSON.getAdapter(JsonElement.class);
+	private static final long WATCHDOG_INTERVAL_MILLIS = 50;
+	// Watchdogs only check a few flags and close connections, so one thread is enough for all API instances. Not the
+	// API executor, where tasks that block (polls, publishers, prefetching) would delay them.
+	static final ScheduledThreadPoolExecutor WATCHDOG_TIMER = createWatchdogTimer();
+
 	private final @NotNull URL baseUrl;
+	private final @NotNull String baseUrlString;
+	// Base URLs like index.php?route=/api/v2 already have a query string
+	private final char querySeparator;
 	private final @NotNull String apiKey;
 	private final @NotNull String userAgent;
 	private final @Nullable ApiLogger debugLogger;
 	private final int timeout;
-
-	RequestHandler(final @NotNull URL baseUrl, final @NotNull String apiKey, final @NotNull String userAgent, @Nullable ApiLogger debugLogger, final int timeout) {
+	// May be shared with other sites, keys start with this handler's prefix
+	private final @Nullable ConditionalResponseCache conditionalResponses;
+	private final @NotNull String conditionalKeyPrefix;
+	// Minimum size of a POST body before it is gzipped, -1 to never compress
+	private final int requestCompressionThreshold;
+	private final @NotNull BufferPool bufferPool;
+	private final @NotNull RequestDispatcher dispatcher;
+	private final @NotNull RequestMetrics metrics;
+	// API executor, for background work of the API's users
+	private final @NotNull ScheduledExecutorService executor;
+	// Default time budget for each request, -1 for none
+	private final long deadlineMillis;
+
+	RequestHandler(final @NotNull URL baseUrl, final @NotNull String apiKey, final @NotNull String userAgent, @Nullable ApiLogger debugLogger, final int timeout, final @Nullable ConditionalResponseCache conditionalResponses, final int requestCompressionThreshold, final @NotNull BufferPool bufferPool, final @NotNull RequestDispatcher dispatcher, final @Nullable RequestMetrics parentMetrics, final @NotNull ScheduledExecutorService executor, final long deadlineMillis) {
 		this.baseUrl = Objects.requireNonNull(baseUrl, "Base URL is null");
+		this.baseUrlString = baseUrl.toString();
+		this.querySeparator = baseUrl.getQuery() != null ? '&' : '?';
 		this.apiKey = Objects.requireNonNull(apiKey, "Api key is null");
 		this.userAgent = Objects.requireNonNull(userAgent, "User agent is null");
 		this.debugLogger = debugLogger;
 		this.timeout = timeout;
+		this.conditionalResponses = conditionalResponses;
+		this.conditionalKeyPrefix = conditionalResponses != null ? conditionalResponses.newKeyPrefix() : "";
+		this.requestCompressionThreshold = requestCompressionThreshold;
+		this.bufferPool = Objects.requireNonNull(bufferPool, "Buffer pool is null");
+		this.dispatcher = Objects.requireNonNull(dispatcher, "Dispatcher is null");
+		this.metrics = new RequestMetrics(bufferPool, dispatcher, parentMetrics);
+		this.executor = Objects.requireNonNull(executor, "Executor is null");
+		this.deadlineMillis = deadlineMillis;
 	}
 
 	public @NotNull URL getApiUrl() {
@@ -44,55 +86,99 @@ public class RequestHandler {
 		return this.apiKey;
 	}
 
-	public @NotNull JsonObject post(final @NotNull String route, final @Nullable JsonObject postData) throws FluxException {
-		Preconditions.checkArgument(!route.startsWith("/"), "Route must not start with a slash");
+	public @NotNull RequestMetrics getMetrics() {
+		return this.metrics;
+	}
 
-		URL url;
-		try {
-			url = new URL(this.baseUrl + "/" + route);
-		} catch (final MalformedURLException e) {
-			throw new FluxException("Invalid URL or parameter string");
-		}
+	/**
+	 * @return Executor for background work of the API
+	 */
+	public @NotNull ScheduledExecutorService getExecutor() {
+		return this.executor;
+	}
+
+	public @NotNull JsonObject post(final @NotNull String route, final @Nullable JsonObject postData) throws FluxException {
+		return this.post(Route.of(route), postData);
+	}
 
-		return makeConnection(url, postData);
+	/**
+	 * @param route Route to post to
+	 * @param postData Post body, or null to send an empty body
+	 * @param pathParameters Values for the route's path placeholders
+	 */
+	public @NotNull JsonObject post(final @NotNull Route route, final @Nullable JsonObject postData, final @NotNull Object @NotNull... pathParameters) throws FluxException {
+		//noinspection ConstantConditions
+		return this.dispatch(route.getPriority(), this.buildUrl(route, pathParameters), postData, null).json;
 	}
 
 	public @NotNull JsonObject get(final @NotNull String route, final @NotNull Object @NotNull... parameters) throws FluxException {
-		Preconditions.checkArgument(!route.startsWith("/"), "Route must not start with a slash");
-
-		final StringBuilder urlBuilder = new StringBuilder(this.baseUrl.toString());
-		urlBuilder.append("/");
-		urlBuilder.append(route);
-
-		if (parameters.length > 0) {
-			if (parameters.length % 2 != 0) {
-				final String paramString = Arrays.stream(parameters).map(Object::toString).collect(Collectors.joining("|"));
-				throw new IllegalArgumentException(String.format("Parameter string varargs array length must be even (length is %s - %s)", parameters.length, paramString));
-			}
-
-			for (int i = 0; i < parameters.length; i++) {
-				if (i % 2 == 0) {
-					urlBuilder.append("&");
-					urlBuilder.append(parameters[i]);
-				} else {
-					urlBuilder.append("=");
-					try {
-						urlBuilder.append(URLEncoder.encode(parameters[i].toString(), StandardCharsets.UTF_8.toString()));
-					} catch (final UnsupportedEncodingException e) {
-						throw new RuntimeException(e);
-					}
-				}
+		return this.get(Route.of(route), parameters);
+	}
+
+	/**
+	 * @param route Route to request
+	 * @param parameters Values for the route's path placeholders, followed by query parameter name/value pairs
+	 */
+	public @NotNull JsonObject get(final @NotNull Route route, final @NotNull Object @NotNull... parameters) throws FluxException {
+		//noinspection ConstantConditions
+		return this.dispatch(route.getPriority(), this.buildUrl(route, parameters), null, null).json;
+	}
+
+	/**
+	 * Make a GET request that is conditional on the caller's previous response, instead of the shared
+	 * conditional response cache. Use this for responses the caller keeps, so a 304 Not Modified means
+	 * the response is the same as the one the caller has.
+	 * @param previous Previous response for the same route and parameters, or null to make a normal request
+	 * @return Response, without json if it was not modified
+	 */
+	@NotNull Response getConditional(final @NotNull Route route, final @Nullable Response previous, final @NotNull Object @NotNull... parameters) throws FluxException {
+		return this.dispatch(route.getPriority(), this.buildUrl(route, parameters), null, previous != null ? previous : Response.NONE);
+	}
+
+	private @NotNull Response dispatch(final @NotNull RequestPriority priority, final @NotNull URL url, final @Nullable JsonObject postBody,
+									   final @Nullable Response callerPrevious) throws FluxException {
+		final long start = System.nanoTime();
+		final Deadline deadline = Deadline.current();
+		long deadlineNanos = deadline != null ? deadline.getDeadlineNanos() : Deadline.NONE;
+		if (this.deadlineMillis > 0) {
+			final long defaultDeadline = start + TimeUnit.MILLISECONDS.toNanos(this.deadlineMillis);
+			if (deadlineNanos == Deadline.NONE || defaultDeadline - deadlineNanos < 0) {
+				deadlineNanos = defaultDeadline;
 			}
 		}
 
-		final @NotNull URL url;
+		checkAborted(deadline, deadlineNanos, null);
+		this.dispatcher.acquire(priority, deadlineNanos, deadline);
+		final long started = System.nanoTime();
 		try {
-			url = new URL(urlBuilder.toString());
+			return this.makeConnection(url, postBody, callerPrevious, deadline, deadlineNanos);
+		} finally {
+			this.dispatcher.release(priority);
+			this.metrics.lane(priority, started - start, System.nanoTime() - start);
+		}
+	}
+
+	private static @NotNull ScheduledThreadPoolExecutor createWatchdogTimer() {
+		final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("Flux-Java-API-watchdog")
+				.setDaemon(true)
+				.build());
+		// Most requests finish long before their watchdog would run
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	private @NotNull URL buildUrl(final @NotNull Route route, final @NotNull Object @NotNull[] parameters) throws FluxException {
+		final StringBuilder urlBuilder = URL_BUILDER.get();
+		urlBuilder.setLength(0);
+		urlBuilder.append(this.baseUrlString);
+		route.appendTo(urlBuilder, this.querySeparator, parameters);
+
+		try {
+			return new URL(urlBuilder.toString());
 		} catch (final MalformedURLException e) {
 			throw new FluxException("Error while building request URL: " + urlBuilder, e);
 		}
-
-		return makeConnection(url, null);
 	}
 
 	private void debug(final @NotNull String message, @NotNull Supplier<Object[]> argsSupplier) {
@@ -101,48 +187,130 @@ public class RequestHandler {
 		}
 	}
 
-	private @NotNull JsonObject makeConnection(final URL url, final @Nullable JsonObject postBody) throws FluxException {
-		final HttpURLConnection connection;
-		final byte[] bytes;
+	/**
+	 * Throw an exception if the request should stop, because the thread was interrupted or the deadline passed
+	 * @param cause Exception caused by aborting the request, if any
+	 */
+	private static void checkAborted(final @Nullable Deadline deadline, final long deadlineNanos, final @Nullable IOException cause) throws RequestCancelledException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new RequestCancelledException("Request interrupted", false, cause);
+		}
+		if (deadline != null && deadline.isCancelled()) {
+			throw new RequestCancelledException("Request cancelled", false, cause);
+		}
+		if (deadlineNanos != Deadline.NONE && System.nanoTime() - deadlineNanos >= 0) {
+			throw new RequestCancelledException("Request deadline exceeded", true, cause);
+		}
+	}
+
+	/**
+	 * @param callerPrevious Response kept by the caller to make the request conditional on, or null to use the shared cache
+	 */
+	private @NotNull Response makeConnection(final URL url, final @Nullable JsonObject postBody, final @Nullable Response callerPrevious,
+											 final @Nullable Deadline deadline, final long deadlineNanos) throws FluxException {
+		HttpURLConnection connection = null;
+		ScheduledFuture<?> watchdog = null;
+		Runnable abort = null;
+		final String response;
+		boolean notModified = false;
+		final @Nullable String conditionalKey = postBody == null && callerPrevious == null && this.conditionalResponses != null
+				? this.conditionalKeyPrefix + url
+				: null;
+		//noinspection ConstantConditions
+		final ConditionalResponseCache.@Nullable Entry previous = conditionalKey != null ? this.conditionalResponses.get(conditionalKey) : null;
+		final @Nullable String previousEtag = callerPrevious != null ? callerPrevious.etag : previous != null ? previous.etag : null;
+		final @Nullable String previousLastModified = callerPrevious != null ? callerPrevious.lastModified : previous != null ? previous.lastModified : null;
 		try {
 			connection = (HttpURLConnection) url.openConnection();
 
-			connection.setReadTimeout(this.timeout);
-			connection.setConnectTimeout(this.timeout);
+			int timeout = this.timeout;
+			if (deadlineNanos != Deadline.NONE) {
+				// Rounded up, so a timeout means the deadline has passed
+				final int remaining = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) + 1);
+				timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+			}
+			connection.setReadTimeout(timeout);
+			connection.setConnectTimeout(timeout);
+
+			// Timeouts apply to connecting and each read separately, and don't notice interrupts. While connecting
+			// and waiting for the response headers, the connection is closed from another thread to abort. Closing it
+			// while the body is read would wait for the current read to finish, so the body is read through a stream
+			// that checks for aborts between reads instead.
+			final HttpURLConnection watched = connection;
+			final AtomicBoolean readingBody = new AtomicBoolean();
+			abort = () -> {
+				if (!readingBody.get()) {
+					watched.disconnect();
+				}
+			};
+			final Runnable abortRef = abort;
+			final Thread thread = Thread.currentThread();
+			watchdog = WATCHDOG_TIMER.scheduleWithFixedDelay(() -> {
+				if (thread.isInterrupted() || deadlineNanos != Deadline.NONE && System.nanoTime() - deadlineNanos >= 0) {
+					abortRef.run();
+				}
+			}, WATCHDOG_INTERVAL_MILLIS, WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			if (deadline != null) {
+				deadline.register(abort);
+			}
 
 			debug("Making connection %s to url %s", () -> new Object[]{ postBody != null ? "POST" : "GET", url});
 
+			this.metrics.request();
+
 			connection.addRequestProperty("User-Agent", this.userAgent);
 			connection.addRequestProperty("X-API-Key", this.apiKey);
+			connection.addRequestProperty("Accept-Encoding", "gzip, deflate");
 
 			debug("Using User-Agent '%s'", () -> new Object[]{ this.userAgent });
 
+			if (previousEtag != null) {
+				connection.addRequestProperty("If-None-Match", previousEtag);
+			}
+			if (previousLastModified != null) {
+				connection.addRequestProperty("If-Modified-Since", previousLastModified);
+			}
+
 			if (postBody != null) {
 				debug("Post body below\n-----------------\n%s\n-----------------", () -> new Object[] { postBody });
 				connection.setRequestMethod("POST");
-				final byte[] encodedMessage = postBody.toString().getBytes(StandardCharsets.UTF_8);
-				connection.setRequestProperty("Content-Length", encodedMessage.length + "");
 				connection.setRequestProperty("Content-Type", "application/json");
 				connection.setDoOutput(true);
-				try (OutputStream out = connection.getOutputStream()) {
-					out.write(encodedMessage);
-				}
+				this.writeBody(connection, postBody);
 			}
 
-			if (connection.getResponseCode() >= 400) {
+			if ((previousEtag != null || previousLastModified != null) && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				this.metrics.notModified();
+				if (callerPrevious != null) {
+					debug("Website response not modified", () -> new Object[0]);
+					return new Response(null, true, previousEtag, previousLastModified);
+				}
+				// Parsed again below, so every caller gets its own json object
+				debug("Website response not modified, using previous response", () -> new Object[0]);
+				//noinspection ConstantConditions
+				response = previous.body;
+				notModified = true;
+			} else if (connection.getResponseCode() >= 400) {
 				try (final InputStream in = connection.getErrorStream()) {
 					if (in == null) {
 						throw new FluxException("Website sent empty response with code " + connection.getResponseCode());
 					} else {
-						bytes = getBytesFromInputStream(in);
+						readingBody.set(true);
+						response = this.readResponse(connection, new AbortableInputStream(in, deadline, deadlineNanos));
 					}
 				}
 			} else {
 				try (final InputStream in = connection.getInputStream()) {
-					bytes = getBytesFromInputStream(in);
+					readingBody.set(true);
+					response = this.readResponse(connection, new AbortableInputStream(in, deadline, deadlineNanos));
 				}
 			}
 		} catch (final IOException e) {
+			this.metrics.failedRequest();
+			if (connection != null) {
+				connection.disconnect();
+			}
+			checkAborted(deadline, deadlineNanos, e);
 			final StringBuilder message = new StringBuilder("Network connection error (not a Flux issue).");
 			if (e.getMessage().contains("unable to find valid certification path to requested target")) {
 				message.append("\n HINT: Ensure your website uses a full chain certificate.");
@@ -150,10 +318,15 @@ public class RequestHandler {
 			message.append(" IOException: ");
 			message.append(e.getMessage());
 			throw new FluxException(message.toString(), e);
+		} finally {
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+			if (deadline != null && abort != null) {
+				deadline.unregister(abort);
+			}
 		}
 
-		final String response = new String(bytes, StandardCharsets.UTF_8);
-
 		if (response.equals("API is disabled")) {
 			throw new ApiDisabledException();
 		}
@@ -188,6 +361,7 @@ public class RequestHandler {
 					+ "-----------------\n"
 					+ printableResponse
 					+ "-----------------\n";
+			this.metrics.failedRequest();
 			if (code == 301 || code == 302 || code == 303) {
 				message += "HINT: The URL results in a redirect. If your URL uses http://, change to https://. If your website forces www., make sure to add www. to the url";
 			} else if (code == 520 || code == 521) {
@@ -211,16 +385,78 @@ public class RequestHandler {
 			throw new ApiError(json.get("code").getAsInt(), meta);
 		}
 
-		return json;
+		if (notModified) {
+			return new Response(json, true, previousEtag, previousLastModified);
+		}
+
+		final String etag = postBody == null ? connection.getHeaderField("ETag") : null;
+		final String lastModified = postBody == null ? connection.getHeaderField("Last-Modified") : null;
+		if (conditionalKey != null) {
+			//noinspection ConstantConditions
+			this.conditionalResponses.put(conditionalKey, etag, lastModified, response);
+		}
+
+		return new Response(json, false, etag, lastModified);
 	}
 
-	private static byte @NotNull[] getBytesFromInputStream(final @NotNull InputStream is) throws IOException {
-	    final ByteArrayOutputStream os = new ByteArrayOutputStream();
-	    final byte[] buffer = new byte[0xFFFF];
-	    for (int len = is.read(buffer); len != -1; len = is.read(buffer)) {
-	        os.write(buffer, 0, len);
-	    }
-	    return os.toByteArray();
+	/**
+	 * Read the response body, decompressing it while reading if the website sent a compressed response
+	 */
+	private @NotNull String readResponse(final @NotNull HttpURLConnection connection, final @NotNull InputStream in) throws IOException {
+		final CountingInputStream counting = new CountingInputStream(in);
+		final String encoding = connection.getContentEncoding();
+		final InputStream decoded;
+		if ("gzip".equalsIgnoreCase(encoding)) {
+			decoded = new GZIPInputStream(counting);
+		} else if ("deflate".equalsIgnoreCase(encoding)) {
+			decoded = new InflaterInputStream(counting);
+		} else {
+			decoded = counting;
+		}
+
+		try (BufferPool.Buffer buffer = this.bufferPool.acquire()) {
+			// Content-Length is the compressed size for compressed responses, not useful for sizing the buffer
+			buffer.readFrom(decoded, decoded == counting ? connection.getContentLengthLong() : -1);
+			final int size = buffer.size();
+			this.metrics.responseBody(size, counting.getCount());
+			if (decoded != counting) {
+				debug("Decompressed %s response from %s to %s bytes", () -> new Object[] { encoding, counting.getCount(), size });
+			}
+			return buffer.toUtf8String();
+		}
+	}
+
+	/**
+	 * Serialize the post body straight into a pooled buffer, and write that buffer to the connection.
+	 * Compressed bodies are gzipped while writing, using chunked transfer encoding.
+	 */
+	private void writeBody(final @NotNull HttpURLConnection connection, final @NotNull JsonObject postBody) throws IOException {
+		try (BufferPool.Buffer buffer = this.bufferPool.acquire()) {
+			final JsonWriter writer = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+			JSON_ELEMENT_ADAPTER.write(writer, postBody);
+			writer.flush();
+
+			final int length = buffer.size();
+			if (this.requestCompressionThreshold >= 0 && length >= this.requestCompressionThreshold) {
+				connection.setRequestProperty("Content-Encoding", "gzip");
+				connection.setChunkedStreamingMode(0);
+				final CountingOutputStream counting;
+				try (OutputStream out = connection.getOutputStream()) {
+					counting = new CountingOutputStream(out);
+					try (GZIPOutputStream gzip = new GZIPOutputStream(counting)) {
+						gzip.write(buffer.array(), 0, length);
+					}
+				}
+				debug("Compressed post body from %s to %s bytes", () -> new Object[] { length, counting.getCount() });
+				this.metrics.requestBody(length, counting.getCount());
+			} else {
+				connection.setFixedLengthStreamingMode(length);
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(buffer.array(), 0, length);
+				}
+				this.metrics.requestBody(length, length);
+			}
+		}
 	}
 
 	private static @NotNull String regularAsciiOnly(@NotNull String message) {
@@ -238,4 +474,74 @@ public class RequestHandler {
 		return new String(chars);
 	}
 
+	/**
+	 * Stream that fails the next read once the request has been aborted
+	 */
+	private static class AbortableInputStream extends FilterInputStream {
+
+		private final @Nullable Deadline deadline;
+		private final long deadlineNanos;
+
+		private AbortableInputStream(final @NotNull InputStream in, final @Nullable Deadline deadline, final long deadlineNanos) {
+			super(in);
+			this.deadline = deadline;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		private void checkAborted() throws IOException {
+			if (Thread.currentThread().isInterrupted() ||
+					this.deadline != null && this.deadline.isCancelled() ||
+					this.deadlineNanos != Deadline.NONE && System.nanoTime() - this.deadlineNanos >= 0) {
+				throw new InterruptedIOException("Request aborted");
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			this.checkAborted();
+			return super.read();
+		}
+
+		@Override
+		public int read(final byte @NotNull[] b, final int off, final int len) throws IOException {
+			this.checkAborted();
+			return super.read(b, off, len);
+		}
+
+	}
+
+	/**
+	 * Response body and the headers needed to make the next request conditional
+	 */
+	static final class Response {
+
+		// Makes the request conditional without having a previous response
+		private static final Response NONE = new Response(null, false, null, null);
+
+		private final @Nullable JsonObject json;
+		private final boolean notModified;
+		private final @Nullable String etag;
+		private final @Nullable String lastModified;
+
+		private Response(final @Nullable JsonObject json, final boolean notModified, final @Nullable String etag, final @Nullable String lastModified) {
+			this.json = json;
+			this.notModified = notModified;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @return Json response, null if the response was not modified since the previous response of the caller
+		 */
+		@Nullable JsonObject json() {
+			return this.json;
+		}
+
+		boolean isNotModified() {
+			return this.notModified;
+		}
+
+	}
+
+
 }
@@ -0,0 +1,240 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for requests made by a {@link RequestHandler}. All counters are cumulative since the API was built.
+ * The metrics of a site in a {@link FluxClientGroup} are also added to the group's metrics.
+ */
+public final class RequestMetrics {
+
+	private final BufferPool bufferPool;
+	private final RequestDispatcher dispatcher;
+	private final @Nullable RequestMetrics parent;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failedRequests = new LongAdder();
+	private final LongAdder notModifiedResponses = new LongAdder();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder requestBytesSent = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private final LongAdder responseBytesReceived = new LongAdder();
+	// Per priority, by ordinal
+	private final LongAdder[] laneRequests = newAdders();
+	private final LongAdder[] laneQueueNanos = newAdders();
+	private final LongAdder[] laneLatencyNanos = newAdders();
+	private final LongAccumulator[] laneMaxLatencyNanos = new LongAccumulator[RequestPriority.values().length];
+
+	RequestMetrics(final BufferPool bufferPool, final RequestDispatcher dispatcher) {
+		this(bufferPool, dispatcher, null);
+	}
+
+	/**
+	 * @param parent Metrics to add all requests to as well, or null
+	 */
+	RequestMetrics(final BufferPool bufferPool, final RequestDispatcher dispatcher, final @Nullable RequestMetrics parent) {
+		this.bufferPool = bufferPool;
+		this.dispatcher = dispatcher;
+		this.parent = parent;
+		for (int i = 0; i < this.laneMaxLatencyNanos.length; i++) {
+			this.laneMaxLatencyNanos[i] = new LongAccumulator(Math::max, 0);
+		}
+	}
+
+	private static LongAdder[] newAdders() {
+		final LongAdder[] adders = new LongAdder[RequestPriority.values().length];
+		for (int i = 0; i < adders.length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	void request() {
+		this.requests.increment();
+		if (this.parent != null) {
+			this.parent.request();
+		}
+	}
+
+	void failedRequest() {
+		this.failedRequests.increment();
+		if (this.parent != null) {
+			this.parent.failedRequest();
+		}
+	}
+
+	void notModified() {
+		this.notModifiedResponses.increment();
+		if (this.parent != null) {
+			this.parent.notModified();
+		}
+	}
+
+	void requestBody(final long uncompressed, final long sent) {
+		this.requestBytes.add(uncompressed);
+		this.requestBytesSent.add(sent);
+		if (this.parent != null) {
+			this.parent.requestBody(uncompressed, sent);
+		}
+	}
+
+	void responseBody(final long uncompressed, final long received) {
+		this.responseBytes.add(uncompressed);
+		this.responseBytesReceived.add(received);
+		if (this.parent != null) {
+			this.parent.responseBody(uncompressed, received);
+		}
+	}
+
+	/**
+	 * @param priority Priority of the request
+	 * @param queueNanos Time spent waiting for the dispatcher
+	 * @param latencyNanos Total time, including waiting
+	 */
+	void lane(final @NotNull RequestPriority priority, final long queueNanos, final long latencyNanos) {
+		final int lane = priority.ordinal();
+		this.laneRequests[lane].increment();
+		this.laneQueueNanos[lane].add(queueNanos);
+		this.laneLatencyNanos[lane].add(latencyNanos);
+		this.laneMaxLatencyNanos[lane].accumulate(latencyNanos);
+		if (this.parent != null) {
+			this.parent.lane(priority, queueNanos, latencyNanos);
+		}
+	}
+
+	public long getRequestCount() {
+		return this.requests.sum();
+	}
+
+	public long getFailedRequestCount() {
+		return this.failedRequests.sum();
+	}
+
+	/**
+	 * @return Number of conditional requests answered with 304 Not Modified
+	 */
+	public long getNotModifiedCount() {
+		return this.notModifiedResponses.sum();
+	}
+
+	/**
+	 * @return Total size of request bodies before compression
+	 */
+	public long getRequestBytes() {
+		return this.requestBytes.sum();
+	}
+
+	/**
+	 * @return Total size of request bodies as sent over the network
+	 */
+	public long getRequestBytesSent() {
+		return this.requestBytesSent.sum();
+	}
+
+	/**
+	 * @return Total size of response bodies after decompression
+	 */
+	public long getResponseBytes() {
+		return this.responseBytes.sum();
+	}
+
+	/**
+	 * @return Total size of response bodies as received over the network
+	 */
+	public long getResponseBytesReceived() {
+		return this.responseBytesReceived.sum();
+	}
+
+	/**
+	 * @return Uncompressed size divided by received size for all responses, 1 if nothing was compressed
+	 */
+	public double getResponseCompressionRatio() {
+		return ratio(this.getResponseBytes(), this.getResponseBytesReceived());
+	}
+
+	/**
+	 * @return Uncompressed size divided by sent size for all request bodies, 1 if nothing was compressed
+	 */
+	public double getRequestCompressionRatio() {
+		return ratio(this.getRequestBytes(), this.getRequestBytesSent());
+	}
+
+	/**
+	 * @return Number of times a request or response buffer was taken from the buffer pool
+	 * @see BufferPool#getHits()
+	 */
+	public long getBufferPoolHits() {
+		return this.bufferPool.getHits();
+	}
+
+	/**
+	 * @return Number of times a request or response buffer had to be allocated
+	 * @see BufferPool#getMisses()
+	 */
+	public long getBufferPoolMisses() {
+		return this.bufferPool.getMisses();
+	}
+
+	/**
+	 * @return Number of finished requests with this priority, including failed requests
+	 */
+	public long getRequestCount(final @NotNull RequestPriority priority) {
+		return this.laneRequests[priority.ordinal()].sum();
+	}
+
+	/**
+	 * @return Average time requests with this priority waited before starting, in milliseconds
+	 */
+	public double getAverageQueueTimeMillis(final @NotNull RequestPriority priority) {
+		return averageMillis(this.laneQueueNanos[priority.ordinal()].sum(), this.getRequestCount(priority));
+	}
+
+	/**
+	 * @return Average time from calling a method to receiving the response for requests with this priority, in milliseconds
+	 */
+	public double getAverageLatencyMillis(final @NotNull RequestPriority priority) {
+		return averageMillis(this.laneLatencyNanos[priority.ordinal()].sum(), this.getRequestCount(priority));
+	}
+
+	/**
+	 * @return Highest latency of a request with this priority, in milliseconds
+	 */
+	public long getMaxLatencyMillis(final @NotNull RequestPriority priority) {
+		return TimeUnit.NANOSECONDS.toMillis(this.laneMaxLatencyNanos[priority.ordinal()].get());
+	}
+
+	/**
+	 * @return Number of requests with this priority currently waiting to start
+	 */
+	public int getWaitingRequests(final @NotNull RequestPriority priority) {
+		return this.dispatcher.getWaiting(priority);
+	}
+
+	private static double averageMillis(final long nanos, final long count) {
+		return count == 0 ? 0 : nanos / 1e6 / count;
+	}
+
+	private static double ratio(final long uncompressed, final long compressed) {
+		return compressed == 0 ? 1 : (double) uncompressed / compressed;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder lanes = new StringBuilder();
+		for (final RequestPriority priority : RequestPriority.values()) {
+			lanes.append(String.format(",%s=[requests=%s,avgQueueMs=%.1f,avgLatencyMs=%.1f,maxLatencyMs=%s]",
+					priority, this.getRequestCount(priority), this.getAverageQueueTimeMillis(priority),
+					this.getAverageLatencyMillis(priority), this.getMaxLatencyMillis(priority)));
+		}
+		return String.format("RequestMetrics[requests=%s,failed=%s,notModified=%s,responseBytes=%s,responseRatio=%.2f,requestBytes=%s,requestRatio=%.2f,bufferHits=%s,bufferMisses=%s%s]",
+				this.getRequestCount(), this.getFailedRequestCount(), this.getNotModifiedCount(),
+				this.getResponseBytesReceived(), this.getResponseCompressionRatio(),
+				this.getRequestBytesSent(), this.getRequestCompressionRatio(),
+				this.getBufferPoolHits(), this.getBufferPoolMisses(), lanes);
+	}
+
+}
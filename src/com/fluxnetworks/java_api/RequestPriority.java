@@ -0,0 +1,21 @@
+package com.fluxnetworks.java_api;
+
+/**
+ * Priority of a request. When the number of concurrent requests is limited, waiting requests with a higher
+ * priority are started before those with a lower priority.
+ *
+ * @see FluxApiBuilder#withPriorityLimits(RequestPriority, int, int)
+ */
+public enum RequestPriority {
+
+	/**
+	 * Requests a player or user is waiting for, like looking up a user or verifying an account
+	 */
+	INTERACTIVE,
+	NORMAL,
+	/**
+	 * Bulk requests, like user listings, role list submissions and console logs
+	 */
+	BACKGROUND
+
+}
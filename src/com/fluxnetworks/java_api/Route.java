@@ -0,0 +1,152 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * API route template like {@code users/{id}/notifications}, parsed once so building a request URL
+ * only needs to append the literal parts and the encoded parameters.
+ */
+public final class Route {
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final @NotNull String template;
+	// Literal parts, with a placeholder between each pair: literals.length == placeholders + 1
+	private final @NotNull String @NotNull[] literals;
+	private final @NotNull RequestPriority priority;
+
+	private Route(final @NotNull String template, final @NotNull String @NotNull[] literals, final @NotNull RequestPriority priority) {
+		this.template = template;
+		this.literals = literals;
+		this.priority = priority;
+	}
+
+	/**
+	 * @param template Route relative to the API URL, with {@code {name}} placeholders for path parameters
+	 * @return Compiled route, with {@link RequestPriority#NORMAL} priority
+	 */
+	public static @NotNull Route of(final @NotNull String template) {
+		return of(template, RequestPriority.NORMAL);
+	}
+
+	/**
+	 * @param template Route relative to the API URL, with {@code {name}} placeholders for path parameters
+	 * @param priority Priority of requests to this route
+	 * @return Compiled route
+	 */
+	public static @NotNull Route of(final @NotNull String template, final @NotNull RequestPriority priority) {
+		Objects.requireNonNull(template, "Route template is null");
+		Objects.requireNonNull(priority, "Priority is null");
+		Preconditions.checkArgument(!template.startsWith("/"), "Route must not start with a slash");
+
+		final List<String> literals = new ArrayList<>();
+		int start = 0;
+		for (int open = template.indexOf('{'); open != -1; open = template.indexOf('{', start)) {
+			final int close = template.indexOf('}', open);
+			Preconditions.checkArgument(close != -1, "Unclosed placeholder in route %s", template);
+			literals.add(template.substring(start, open));
+			start = close + 1;
+		}
+		literals.add(template.substring(start));
+		return new Route(template, literals.toArray(new String[0]), priority);
+	}
+
+	public int getPathParameterCount() {
+		return this.literals.length - 1;
+	}
+
+	public @NotNull RequestPriority getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * @return Route with the same template and a different priority, for requests to the same route made for another reason
+	 */
+	public @NotNull Route withPriority(final @NotNull RequestPriority priority) {
+		Objects.requireNonNull(priority, "Priority is null");
+		return priority == this.priority ? this : new Route(this.template, this.literals, priority);
+	}
+
+	/**
+	 * Append this route to a URL
+	 * @param url Builder containing the base URL
+	 * @param querySeparator Character to use before the first query parameter
+	 * @param parameters Values for the path placeholders, followed by query parameter name/value pairs
+	 */
+	void appendTo(final @NotNull StringBuilder url, final char querySeparator, final @NotNull Object @NotNull[] parameters) {
+		final int pathParameters = this.getPathParameterCount();
+		if (parameters.length < pathParameters || (parameters.length - pathParameters) % 2 != 0) {
+			throw new IllegalArgumentException(String.format("Route %s needs %s path parameters followed by name/value pairs, got %s parameters",
+					this.template, pathParameters, parameters.length));
+		}
+
+		url.append('/');
+		url.append(this.literals[0]);
+		for (int i = 0; i < pathParameters; i++) {
+			encode(url, parameters[i], false);
+			url.append(this.literals[i + 1]);
+		}
+
+		char separator = querySeparator;
+		for (int i = pathParameters; i < parameters.length; i += 2) {
+			url.append(separator);
+			url.append(parameters[i]);
+			url.append('=');
+			encode(url, parameters[i + 1], true);
+			separator = '&';
+		}
+	}
+
+	/**
+	 * Percent-encode a value, without allocating for values that don't need encoding (like numbers)
+	 */
+	private static void encode(final @NotNull StringBuilder out, final @NotNull Object value, final boolean query) {
+		if (value instanceof Integer || value instanceof Long) {
+			out.append(((Number) value).longValue());
+			return;
+		}
+
+		final String string = value.toString();
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '.' || c == '*') {
+				out.append(c);
+			} else if (c == ' ' && query) {
+				out.append('+');
+			} else if (c < 0x80) {
+				appendHex(out, c);
+			} else {
+				// Rare, fall back to encoding the rest of the string as UTF-8
+				for (final byte b : string.substring(i).getBytes(StandardCharsets.UTF_8)) {
+					final int ch = b & 0xFF;
+					if (ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch >= '0' && ch <= '9' || ch == '-' || ch == '_' || ch == '.' || ch == '*') {
+						out.append((char) ch);
+					} else if (ch == ' ' && query) {
+						out.append('+');
+					} else {
+						appendHex(out, ch);
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	private static void appendHex(final @NotNull StringBuilder out, final int b) {
+		out.append('%');
+		out.append(HEX[b >> 4]);
+		out.append(HEX[b & 0xF]);
+	}
+
+	@Override
+	public String toString() {
+		return this.template;
+	}
+
+}
@@ -0,0 +1,417 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Cache for user info and group lookups, optionally backed by an append-only file so
+ * a restarted application doesn't have to request everything from the website again.
+ *
+ * <p>Entries read from the file are served immediately, but are refreshed once in the
+ * background the first time they are used. Entries older than the TTL are never served.</p>
+ *
+ * <p>User info is stored as {@link UserSnapshot}s in their binary encoding, other
+ * responses as json. Announcements and notifications are only cached briefly, in memory,
+ * when prefetched using {@link FluxAPI#prefetch(java.util.UUID...)}.</p>
+ *
+ * <p>The number of entries can be limited, when it is exceeded the oldest entries are removed.</p>
+ */
+public final class UserCache {
+
+	static final String GROUPS_KEY = "groups";
+
+	// Prefetched responses are only meant for the lookups right after prefetching
+	private static final long PREFETCH_TTL_MILLIS = 30_000;
+
+	// When over the limit, remove entries until this fraction of the limit is left, so eviction doesn't run on every put
+	private static final double EVICT_TO_FRACTION = 0.9;
+
+	private static final int MAGIC = 0x464C5843; // FLXC
+	private static final byte FORMAT_VERSION = 3;
+
+	// Compact the file when it has more than twice as many records as there are entries, but not for tiny files
+	private static final int COMPACT_MIN_RECORDS = 1024;
+
+	// Larger json records can only come from a corrupt file
+	private static final int MAX_JSON_SIZE = 16 * 1024 * 1024;
+
+	private static final byte TYPE_REMOVED = 0;
+	private static final byte TYPE_JSON = 1;
+	private static final byte TYPE_USER = 2;
+
+	private final @Nullable File file;
+	private final long ttlMillis;
+	private final int maxEntries;
+	private final @NotNull DefinitionRegistry definitions;
+	private final @NotNull Executor executor;
+	private final @NotNull Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final @NotNull Map<String, Entry> prefetched = new ConcurrentHashMap<>();
+
+	private volatile boolean loaded;
+	private @Nullable DataOutputStream writer;
+	// Records in the file, guarded by this
+	private int records;
+
+	/**
+	 * @param maxEntries Maximum number of entries, or -1 for no limit
+	 * @param definitions Registry for groups and profile fields of snapshots read from the file
+	 */
+	UserCache(final @Nullable File file, final long ttlMillis, final int maxEntries, final @NotNull DefinitionRegistry definitions, final @NotNull Executor executor) {
+		if (ttlMillis <= 0) {
+			throw new IllegalArgumentException("Cache TTL must be positive");
+		}
+		if (maxEntries == 0 || maxEntries < -1) {
+			throw new IllegalArgumentException("Maximum number of cache entries must be positive, or -1 for no limit");
+		}
+		this.file = file;
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		this.definitions = Objects.requireNonNull(definitions, "Definition registry is null");
+		this.executor = Objects.requireNonNull(executor, "Executor is null");
+	}
+
+	/**
+	 * Get a cached value, or load it if it is missing or expired. If the value was read from disk
+	 * and has not been refreshed since, it is returned and a refresh is started in the background.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> @NotNull T get(final @NotNull String key, final @NotNull Loader<T> loader) throws FluxException {
+		this.ensureLoaded();
+
+		final Entry entry = this.entries.get(key);
+		if (entry != null && System.currentTimeMillis() - entry.storedAt < this.ttlMillis) {
+			if (!entry.verified && entry.revalidating.compareAndSet(false, true)) {
+				this.executor.execute(() -> {
+					try {
+						this.put(key, loader.load());
+					} catch (final FluxException e) {
+						// Keep serving the old value, it'll expire eventually
+						entry.revalidating.set(false);
+					}
+				});
+			}
+			return (T) entry.value;
+		}
+
+		final T value = loader.load();
+		this.put(key, value);
+		return value;
+	}
+
+	/**
+	 * @return Cached value, or null if there is no value or it has expired. Never makes a request.
+	 */
+	@Nullable Object peek(final @NotNull String key) {
+		this.ensureLoaded();
+		final Entry entry = this.entries.get(key);
+		return entry != null && System.currentTimeMillis() - entry.storedAt < this.ttlMillis ? entry.value : null;
+	}
+
+	void put(final @NotNull String key, final @NotNull Object value) {
+		this.ensureLoaded();
+		final long now = System.currentTimeMillis();
+		this.entries.put(key, new Entry(value, now, true));
+		this.append(now, key, value);
+		if (this.maxEntries != -1 && this.entries.size() > this.maxEntries) {
+			this.evictOldest();
+		}
+	}
+
+	private synchronized void evictOldest() {
+		final int excess = this.entries.size() - (int) (this.maxEntries * EVICT_TO_FRACTION);
+		if (excess <= 0) {
+			// Another thread evicted already
+			return;
+		}
+		// Evicted entries are only removed from memory, they are dropped from the file when it is compacted
+		this.entries.entrySet().stream()
+				.sorted(Comparator.comparingLong(e -> e.getValue().storedAt))
+				.limit(excess)
+				.collect(Collectors.toList())
+				.forEach(e -> this.entries.remove(e.getKey(), e.getValue()));
+	}
+
+	/**
+	 * Store a response that is likely to be requested soon. It is kept in memory only, for a short time.
+	 */
+	void putPrefetched(final @NotNull String key, final @NotNull JsonObject value) {
+		final long now = System.currentTimeMillis();
+		this.prefetched.values().removeIf(e -> now - e.storedAt >= PREFETCH_TTL_MILLIS);
+		this.prefetched.put(key, new Entry(value, now, true));
+	}
+
+	/**
+	 * @return Prefetched response, or null if it wasn't prefetched recently
+	 */
+	@Nullable JsonObject getPrefetched(final @NotNull String key) {
+		final Entry entry = this.prefetched.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() - entry.storedAt >= PREFETCH_TTL_MILLIS) {
+			this.prefetched.remove(key, entry);
+			return null;
+		}
+		return (JsonObject) entry.value;
+	}
+
+	/**
+	 * Remove a value from the cache, so the next lookup makes a request to the website.
+	 * A prefetched response with this key is removed as well.
+	 * @param key cache key
+	 */
+	public void invalidate(final @NotNull String key) {
+		this.ensureLoaded();
+		this.prefetched.remove(key);
+		if (this.entries.remove(key) != null) {
+			this.append(System.currentTimeMillis(), key, null);
+		}
+	}
+
+	/**
+	 * Remove all values from the cache, including those stored on disk.
+	 */
+	public void invalidateAll() {
+		this.ensureLoaded();
+		this.entries.clear();
+		this.prefetched.clear();
+		if (this.file != null) {
+			synchronized (this) {
+				this.closeWriter();
+				this.records = 0;
+				if (!this.file.delete() && this.file.exists()) {
+					throw new IllegalStateException("Unable to delete cache file " + this.file);
+				}
+			}
+		}
+	}
+
+	public int size() {
+		this.ensureLoaded();
+		return this.entries.size();
+	}
+
+	private void ensureLoaded() {
+		if (this.loaded) {
+			return;
+		}
+
+		synchronized (this) {
+			if (this.loaded) {
+				return;
+			}
+
+			if (this.file != null && this.file.exists()) {
+				try {
+					this.readFile(this.file);
+				} catch (final IOException | RuntimeException e) {
+					// Corrupt, unreadable or an old format, start with an empty cache
+					this.entries.clear();
+					this.records = 0;
+					//noinspection ResultOfMethodCallIgnored
+					this.file.delete();
+				}
+			}
+
+			if (this.maxEntries != -1 && this.entries.size() > this.maxEntries) {
+				this.evictOldest();
+			}
+			this.loaded = true;
+		}
+	}
+
+	private void readFile(final @NotNull File file) throws IOException {
+		final long now = System.currentTimeMillis();
+		int records = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+				throw new IOException("Not a cache file or unsupported version");
+			}
+
+			while (true) {
+				final long storedAt;
+				final String key;
+				final Object value;
+				try {
+					storedAt = in.readLong();
+					key = in.readUTF();
+					value = this.readValue(in);
+				} catch (final EOFException e) {
+					// End of file, or the last record was only partially written
+					break;
+				}
+
+				records++;
+				if (value == null || now - storedAt >= this.ttlMillis) {
+					this.entries.remove(key);
+				} else {
+					this.entries.put(key, new Entry(value, storedAt, false));
+				}
+			}
+		}
+
+		this.records = records;
+		if (records > this.entries.size() * 2) {
+			this.compact(file);
+		}
+	}
+
+	/**
+	 * Rewrite the file with only the current entries. Must be called while holding the lock, with the writer closed.
+	 */
+	private void compact(final @NotNull File file) throws IOException {
+		final File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			writeHeader(out);
+			for (final Map.Entry<String, Entry> e : this.entries.entrySet()) {
+				writeRecord(out, e.getValue().storedAt, e.getKey(), e.getValue().value);
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		this.records = this.entries.size();
+	}
+
+	private synchronized void append(final long storedAt, final @NotNull String key, final @Nullable Object value) {
+		if (this.file == null) {
+			return;
+		}
+
+		// Encode the whole record first, so a record that can't be encoded doesn't leave a partial record in the file
+		final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(record)) {
+			writeRecord(out, storedAt, key, value);
+		} catch (final IOException e) {
+			// For example strings over 64KB, don't persist this entry
+			return;
+		}
+
+		try {
+			if (this.writer == null) {
+				final boolean empty = this.file.length() == 0;
+				this.writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+				if (empty) {
+					writeHeader(this.writer);
+				}
+			}
+			record.writeTo(this.writer);
+			this.writer.flush();
+			this.records++;
+
+			if (this.records > COMPACT_MIN_RECORDS && this.records > this.entries.size() * 2) {
+				this.closeWriter();
+				this.compact(this.file);
+			}
+		} catch (final IOException e) {
+			// The cache is an optimization, failing to persist it shouldn't fail the request
+			this.closeWriter();
+		}
+	}
+
+	private synchronized void closeWriter() {
+		if (this.writer != null) {
+			try {
+				this.writer.close();
+			} catch (final IOException ignored) {
+			}
+			this.writer = null;
+		}
+	}
+
+	private static void writeHeader(final @NotNull DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(FORMAT_VERSION);
+	}
+
+	private static void writeRecord(final @NotNull DataOutputStream out, final long storedAt, final @NotNull String key, final @Nullable Object value) throws IOException {
+		out.writeLong(storedAt);
+		out.writeUTF(key);
+		if (value == null) {
+			out.writeByte(TYPE_REMOVED);
+		} else if (value instanceof UserSnapshot) {
+			out.writeByte(TYPE_USER);
+			((UserSnapshot) value).writeTo(out);
+		} else if (value instanceof JsonObject) {
+			out.writeByte(TYPE_JSON);
+			final byte[] json = value.toString().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(json.length);
+			out.write(json);
+		} else {
+			throw new IllegalArgumentException("Can't store " + value.getClass() + " in cache");
+		}
+	}
+
+	private @Nullable Object readValue(final @NotNull DataInputStream in) throws IOException {
+		final byte type = in.readByte();
+		switch (type) {
+			case TYPE_REMOVED:
+				return null;
+			case TYPE_USER:
+				return UserSnapshot.readFrom(in, this.definitions);
+			case TYPE_JSON:
+				final int length = in.readInt();
+				if (length < 0 || length > MAX_JSON_SIZE) {
+					throw new IOException("Invalid json length " + length + " in cache file");
+				}
+				final byte[] json = new byte[length];
+				in.readFully(json);
+				try {
+					return JsonParser.parseString(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+				} catch (final JsonSyntaxException | IllegalStateException e) {
+					throw new IOException("Invalid json in cache file", e);
+				}
+			default:
+				throw new IOException("Unknown record type " + type);
+		}
+	}
+
+	static @NotNull String userKey(final @NotNull String type, final @NotNull Object value) {
+		return "user:" + type + ":" + value;
+	}
+
+	@FunctionalInterface
+	interface Loader<T> {
+
+		@NotNull T load() throws FluxException;
+
+	}
+
+	private static final class Entry {
+
+		private final @NotNull Object value;
+		private final long storedAt;
+		private final boolean verified;
+		private final AtomicBoolean revalidating = new AtomicBoolean();
+
+		private Entry(final @NotNull Object value, final long storedAt, final boolean verified) {
+			this.value = value;
+			this.storedAt = storedAt;
+			this.verified = verified;
+		}
+
+	}
+
+}
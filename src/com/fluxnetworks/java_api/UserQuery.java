@@ -0,0 +1,412 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Query over registered users that supports more conditions than the website's user list filters.
+ *
+ * <p>Conditions using a {@link UserFilter} are sent to the website when possible (or evaluated against
+ * a {@link MemberTable}, see {@link #from(MemberTable)}). Other conditions are evaluated locally using each
+ * candidate's user info. User info in the {@link UserCache} is used directly, missing user info is requested
+ * with {@link RequestPriority#BACKGROUND} priority, a few users at a time, on threads created for the query.
+ * Use {@link #explain()} to see which conditions are evaluated where.</p>
+ *
+ * @see FluxAPI#queryUsers()
+ */
+public final class UserQuery {
+
+	private static final int DEFAULT_PARALLELISM = 4;
+
+	private final @NotNull FluxAPI api;
+	private final @NotNull Map<UserFilter<?>, Object> pushdown = new LinkedHashMap<>();
+	private final @NotNull List<Condition> local = new ArrayList<>();
+	private boolean any = false;
+	private @Nullable MemberTable table;
+	private int parallelism = DEFAULT_PARALLELISM;
+
+	UserQuery(final @NotNull FluxAPI api) {
+		this.api = api;
+	}
+
+	/**
+	 * Only include users matching a website filter. Filters with a value already set for the same filter
+	 * are evaluated locally, which is only possible for the built-in filters.
+	 */
+	public <T> @NotNull UserQuery where(final @NotNull UserFilter<T> filter, final @NotNull T value) {
+		Objects.requireNonNull(filter, "Filter is null");
+		Objects.requireNonNull(value, "Filter value is null");
+		if (!this.pushdown.containsKey(filter)) {
+			this.pushdown.put(filter, value);
+		} else {
+			this.local.add(filterCondition(filter, value));
+		}
+		return this;
+	}
+
+	/**
+	 * Only include users who registered in this time range
+	 * @param from Start (inclusive), or null for no lower bound
+	 * @param to End (exclusive), or null for no upper bound
+	 */
+	public @NotNull UserQuery registeredBetween(final @Nullable Date from, final @Nullable Date to) {
+		this.local.add(new Condition("registered between " + from + " and " + to,
+				user -> inRange(user.getRegisteredTimestamp(), from, to)));
+		return this;
+	}
+
+	/**
+	 * Only include users who were last online in this time range
+	 * @param from Start (inclusive), or null for no lower bound
+	 * @param to End (exclusive), or null for no upper bound
+	 */
+	public @NotNull UserQuery lastOnlineBetween(final @Nullable Date from, final @Nullable Date to) {
+		this.local.add(new Condition("last online between " + from + " and " + to,
+				user -> inRange(user.getLastOnlineTimestamp(), from, to)));
+		return this;
+	}
+
+	/**
+	 * Only include users in at least one group with an order in this range
+	 * @param minOrder Minimum order (inclusive)
+	 * @param maxOrder Maximum order (inclusive)
+	 */
+	public @NotNull UserQuery groupOrderBetween(final int minOrder, final int maxOrder) {
+		this.local.add(new Condition("group order between " + minOrder + " and " + maxOrder,
+				user -> Arrays.stream(user.groups()).anyMatch(g -> g.getOrder() >= minOrder && g.getOrder() <= maxOrder)));
+		return this;
+	}
+
+	/**
+	 * Only include users with a profile field value matching a predicate
+	 * @param fieldName Profile field name
+	 * @param predicate Predicate for the field value, the value is null if the user has not filled in the field
+	 */
+	public @NotNull UserQuery profileField(final @NotNull String fieldName, final @NotNull Predicate<@Nullable String> predicate) {
+		Objects.requireNonNull(fieldName, "Field name is null");
+		Objects.requireNonNull(predicate, "Predicate is null");
+		this.local.add(new Condition("profile field '" + fieldName + "' matches predicate",
+				user -> {
+					final CustomProfileField[] fields = user.profileFields();
+					for (int i = 0; i < fields.length; i++) {
+						if (fields[i].getName().equals(fieldName)) {
+							return predicate.test(user.profileFieldValues()[i]);
+						}
+					}
+					return predicate.test(null);
+				}));
+		return this;
+	}
+
+	/**
+	 * Only include users matching a custom predicate
+	 * @param description Description for {@link #explain()}
+	 * @param predicate Predicate
+	 */
+	public @NotNull UserQuery where(final @NotNull String description, final @NotNull Predicate<@NotNull UserSnapshot> predicate) {
+		this.local.add(new Condition(description, Objects.requireNonNull(predicate, "Predicate is null")));
+		return this;
+	}
+
+	/**
+	 * Users must match all conditions (default)
+	 */
+	public @NotNull UserQuery all() {
+		this.any = false;
+		return this;
+	}
+
+	/**
+	 * Users must match at least one condition. Website filters can't be combined with local conditions
+	 * this way, so if there are local conditions all conditions are evaluated locally.
+	 */
+	public @NotNull UserQuery any() {
+		this.any = true;
+		return this;
+	}
+
+	/**
+	 * Evaluate website filters against a member table instead of making requests for them
+	 * @param table Member table, or null to use the website
+	 */
+	public @NotNull UserQuery from(final @Nullable MemberTable table) {
+		this.table = table;
+		return this;
+	}
+
+	/**
+	 * Maximum number of users to request user info for at the same time, when evaluating local conditions
+	 * for users that are not in the user cache. Defaults to 4.
+	 * @param parallelism Number of requests, 1 to request on the calling thread
+	 */
+	public @NotNull UserQuery parallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @return Description of how this query will be executed
+	 */
+	public @NotNull String explain() {
+		final Plan plan = this.plan();
+		final StringBuilder explain = new StringBuilder();
+		explain.append("Query plan (").append(this.any ? "ANY" : "ALL").append(")\n");
+		if (this.table != null) {
+			explain.append("  source: member table (").append(this.table.size()).append(" users)");
+		} else {
+			explain.append("  source: website user list");
+		}
+		if (!plan.pushdown.isEmpty()) {
+			explain.append(", filtered by ");
+			explain.append(plan.pushdown.entrySet().stream()
+					.map(e -> e.getKey().getName() + "=" + e.getValue())
+					.collect(Collectors.joining(this.any ? " OR " : " AND ")));
+		}
+		explain.append('\n');
+		if (!plan.local.isEmpty()) {
+			explain.append("  local (requires user info, cached or requested ").append(this.parallelism).append(" at a time): ");
+			explain.append(plan.local.stream()
+					.map(c -> c.description)
+					.collect(Collectors.joining(this.any ? " OR " : " AND ")));
+			explain.append('\n');
+		}
+		return explain.toString();
+	}
+
+	public @NotNull List<@NotNull FluxUser> execute() throws FluxException {
+		final Plan plan = this.plan();
+
+		final List<FluxUser> candidates;
+		if (this.table != null) {
+			candidates = this.fromTable(this.table, plan.pushdown);
+		} else {
+			final FilteredUserListBuilder builder = this.api.getRegisteredUsers();
+			if (this.any) {
+				builder.any();
+			}
+			// Values were checked to have the filter's type by where()
+			builder.withFilters(plan.pushdown);
+			candidates = builder.makeRequest();
+		}
+
+		if (plan.local.isEmpty()) {
+			return candidates;
+		}
+
+		final boolean[] matches = new boolean[candidates.size()];
+		final List<Integer> uncached = new ArrayList<>();
+		for (int i = 0; i < matches.length; i++) {
+			final UserSnapshot snapshot = candidates.get(i).getCachedSnapshot();
+			if (snapshot != null) {
+				matches[i] = this.matches(snapshot, plan.local);
+			} else {
+				uncached.add(i);
+			}
+		}
+		this.requestMatches(candidates, uncached, plan.local, matches);
+
+		final List<FluxUser> users = new ArrayList<>();
+		for (int i = 0; i < matches.length; i++) {
+			if (matches[i]) {
+				users.add(candidates.get(i));
+			}
+		}
+		return Collections.unmodifiableList(users);
+	}
+
+	/**
+	 * Request user info for candidates that are not cached, and evaluate the conditions for them
+	 * @param indexes Indexes of the candidates to request
+	 */
+	private void requestMatches(final @NotNull List<FluxUser> candidates, final @NotNull List<Integer> indexes,
+								final @NotNull List<Condition> conditions, final boolean @NotNull[] matches) throws FluxException {
+		if (indexes.isEmpty()) {
+			return;
+		}
+		if (this.parallelism == 1 || indexes.size() == 1) {
+			for (final int i : indexes) {
+				matches[i] = this.requestMatches(candidates.get(i), conditions);
+			}
+			return;
+		}
+
+		// Not the API executor or the common pool, requests block their thread
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, indexes.size()),
+				new ThreadFactoryBuilder()
+						.setNameFormat("Flux-Java-API-query-%d")
+						.setDaemon(true)
+						.build());
+		try {
+			final List<Future<Boolean>> futures = new ArrayList<>(indexes.size());
+			for (final int i : indexes) {
+				final FluxUser user = candidates.get(i);
+				futures.add(executor.submit(() -> this.requestMatches(user, conditions)));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				matches[indexes.get(i)] = futures.get(i).get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RequestCancelledException("Interrupted while requesting user info", false, e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof FluxException) {
+				throw (FluxException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new FluxException(cause);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private boolean requestMatches(final @NotNull FluxUser user, final @NotNull List<Condition> conditions) throws FluxException {
+		final UserSnapshot snapshot;
+		try {
+			snapshot = user.getSnapshot(RequestPriority.BACKGROUND);
+		} catch (final UserNotExistException e) {
+			// Deleted since the user list was requested
+			return false;
+		}
+		return this.matches(snapshot, conditions);
+	}
+
+	private boolean matches(final @NotNull UserSnapshot snapshot, final @NotNull List<Condition> conditions) {
+		for (final Condition condition : conditions) {
+			if (condition.test.test(snapshot) == this.any) {
+				return this.any;
+			}
+		}
+		return !this.any;
+	}
+
+	private @NotNull List<FluxUser> fromTable(final @NotNull MemberTable table, final @NotNull Map<UserFilter<?>, Object> filters) {
+		final List<FluxUser> users = new ArrayList<>();
+		for (int row = 0; row < table.size(); row++) {
+			boolean matches = !this.any || filters.isEmpty();
+			for (final Map.Entry<UserFilter<?>, Object> e : filters.entrySet()) {
+				if (tableMatches(table, row, e.getKey(), e.getValue()) == this.any) {
+					matches = this.any;
+					break;
+				}
+			}
+			if (matches) {
+				users.add(new FluxUser(this.api, table.getId(row), null, true, table.getUniqueId(row), false, -1L));
+			}
+		}
+		return users;
+	}
+
+	private static boolean tableMatches(final @NotNull MemberTable table, final int row, final @NotNull UserFilter<?> filter, final @NotNull Object value) {
+		if (filter == UserFilter.BANNED) {
+			return table.hasFlags(row, MemberTable.BANNED) == (Boolean) value;
+		} else if (filter == UserFilter.VERIFIED) {
+			return table.hasFlags(row, MemberTable.VERIFIED) == (Boolean) value;
+		} else if (filter == UserFilter.DISCORD_LINKED) {
+			return table.hasFlags(row, MemberTable.DISCORD_LINKED) == (Boolean) value;
+		} else if (filter == UserFilter.GROUP_ID) {
+			return table.isInGroup(row, (Integer) value);
+		} else {
+			throw new IllegalStateException("Filter " + filter.getName() + " can't be evaluated against a member table");
+		}
+	}
+
+	private @NotNull Plan plan() {
+		if (this.table != null) {
+			for (final UserFilter<?> filter : this.pushdown.keySet()) {
+				if (!isBuiltIn(filter)) {
+					throw new IllegalStateException("Custom filter " + filter.getName() + " can't be evaluated against a member table");
+				}
+			}
+		}
+
+		if (this.any && !this.local.isEmpty()) {
+			// (server filters) OR (local conditions) can't be split, evaluate everything locally
+			final List<Condition> local = new ArrayList<>();
+			for (final Map.Entry<UserFilter<?>, Object> e : this.pushdown.entrySet()) {
+				if (!isBuiltIn(e.getKey())) {
+					throw new IllegalStateException("Custom filter " + e.getKey().getName() + " can't be combined with local conditions using any()");
+				}
+				local.add(filterCondition(e.getKey(), e.getValue()));
+			}
+			local.addAll(this.local);
+			return new Plan(Collections.emptyMap(), local);
+		}
+
+		return new Plan(this.pushdown, this.local);
+	}
+
+	private static boolean isBuiltIn(final @NotNull UserFilter<?> filter) {
+		return filter == UserFilter.BANNED ||
+				filter == UserFilter.VERIFIED ||
+				filter == UserFilter.DISCORD_LINKED ||
+				filter == UserFilter.GROUP_ID;
+	}
+
+	private static @NotNull Condition filterCondition(final @NotNull UserFilter<?> filter, final @NotNull Object value) {
+		final String description = filter.getName() + "=" + value;
+		if (filter == UserFilter.BANNED) {
+			return new Condition(description, user -> user.isBanned() == (Boolean) value);
+		} else if (filter == UserFilter.VERIFIED) {
+			return new Condition(description, user -> user.isVerified() == (Boolean) value);
+		} else if (filter == UserFilter.DISCORD_LINKED) {
+			return new Condition(description, user -> (user.getDiscordId() > 0) == (Boolean) value);
+		} else if (filter == UserFilter.GROUP_ID) {
+			final int groupId = (Integer) value;
+			return new Condition(description, user -> user.hasGroup(groupId));
+		} else {
+			throw new IllegalArgumentException("Custom filter " + filter.getName() + " can only be evaluated by the website");
+		}
+	}
+
+	private static boolean inRange(final long timestampSeconds, final @Nullable Date from, final @Nullable Date to) {
+		final long millis = timestampSeconds * 1000;
+		return (from == null || millis >= from.getTime()) && (to == null || millis < to.getTime());
+	}
+
+	private static class Condition {
+
+		private final @NotNull String description;
+		private final @NotNull Predicate<UserSnapshot> test;
+
+		private Condition(final @NotNull String description, final @NotNull Predicate<UserSnapshot> test) {
+			this.description = description;
+			this.test = test;
+		}
+
+	}
+
+	private static class Plan {
+
+		private final @NotNull Map<UserFilter<?>, Object> pushdown;
+		private final @NotNull List<Condition> local;
+
+		private Plan(final @NotNull Map<UserFilter<?>, Object> pushdown, final @NotNull List<Condition> local) {
+			this.pushdown = pushdown;
+			this.local = local;
+		}
+
+	}
+
+}
@@ -0,0 +1,497 @@
+package com.fluxnetworks.java_api;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable, compact copy of the user info returned by the website. Strings that are
+ * shared between users (language, group and profile field names) are interned, and
+ * groups and profile field definitions are shared through the {@link DefinitionRegistry},
+ * so many snapshots can be kept in memory at once.
+ */
+public final class UserSnapshot {
+
+	private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+	private static final int FLAG_BANNED = 1;
+	private static final int FLAG_VALIDATED = 1 << 1;
+	private static final int FLAG_HAS_UUID = 1 << 2;
+	// Derived from the groups, not read from stored snapshots
+	private static final int FLAG_STAFF = 1 << 3;
+
+	private static final long[] NO_GROUP_BITS = new long[0];
+
+	private static final byte VERSION = 3;
+	// Longer strings can only come from corrupt data
+	private static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+
+	private final int id;
+	private final @NotNull String username;
+	private final @NotNull String displayName;
+	private final byte flags;
+	private final long uuidMost;
+	private final long uuidLeast;
+	private final long discordId; // -1 if not linked
+	private final long registeredTimestamp; // seconds
+	private final long lastOnlineTimestamp; // seconds
+	private final @NotNull String language;
+	private final int @NotNull[] groupIds;
+	private final @NotNull Group @NotNull[] groups;
+	// Group indexes in the registry, null if decoded without a registry
+	private final @Nullable DefinitionRegistry registry;
+	private final long @NotNull[] groupBits;
+	private final @NotNull String @NotNull[] verificationKeys;
+	private final boolean @NotNull[] verificationValues;
+	private final @NotNull CustomProfileField @NotNull[] profileFields;
+	private final @Nullable String @NotNull[] profileFieldValues;
+
+	private UserSnapshot(final int id,
+						 final @NotNull String username,
+						 final @NotNull String displayName,
+						 final byte flags,
+						 final long uuidMost,
+						 final long uuidLeast,
+						 final long discordId,
+						 final long registeredTimestamp,
+						 final long lastOnlineTimestamp,
+						 final @NotNull String language,
+						 final @NotNull Group @NotNull[] groups,
+						 final @Nullable DefinitionRegistry registry,
+						 final @NotNull String @NotNull[] verificationKeys,
+						 final boolean @NotNull[] verificationValues,
+						 final @NotNull CustomProfileField @NotNull[] profileFields,
+						 final @Nullable String @NotNull[] profileFieldValues) {
+		this.id = id;
+		this.username = username;
+		this.displayName = displayName.equals(username) ? username : displayName;
+		this.uuidMost = uuidMost;
+		this.uuidLeast = uuidLeast;
+		this.discordId = discordId;
+		this.registeredTimestamp = registeredTimestamp;
+		this.lastOnlineTimestamp = lastOnlineTimestamp;
+		this.language = STRINGS.intern(language);
+		this.groups = groups;
+		this.groupIds = new int[groups.length];
+		boolean staff = false;
+		for (int i = 0; i < groups.length; i++) {
+			this.groupIds[i] = groups[i].getId();
+			staff |= groups[i].isStaff();
+		}
+		this.flags = (byte) (staff ? flags | FLAG_STAFF : flags & ~FLAG_STAFF);
+		this.registry = registry;
+		this.groupBits = registry != null ? registry.bits(this.groupIds) : NO_GROUP_BITS;
+		this.verificationKeys = verificationKeys;
+		this.verificationValues = verificationValues;
+		this.profileFields = profileFields;
+		this.profileFieldValues = profileFieldValues;
+	}
+
+	public int getId() {
+		return this.id;
+	}
+
+	public @NotNull String getUsername() {
+		return this.username;
+	}
+
+	public @NotNull String getDisplayName() {
+		return this.displayName;
+	}
+
+	public boolean hasUniqueId() {
+		return (this.flags & FLAG_HAS_UUID) != 0;
+	}
+
+	public @Nullable UUID getUniqueId() {
+		return this.hasUniqueId() ? new UUID(this.uuidMost, this.uuidLeast) : null;
+	}
+
+	/**
+	 * @return Linked Discord user id, or -1 if the user has not linked their Discord account
+	 */
+	public long getDiscordId() {
+		return this.discordId;
+	}
+
+	/**
+	 * @return Registration time, in seconds since the unix epoch
+	 */
+	public long getRegisteredTimestamp() {
+		return this.registeredTimestamp;
+	}
+
+	/**
+	 * @return Last online time, in seconds since the unix epoch
+	 */
+	public long getLastOnlineTimestamp() {
+		return this.lastOnlineTimestamp;
+	}
+
+	public boolean isBanned() {
+		return (this.flags & FLAG_BANNED) != 0;
+	}
+
+	public boolean isVerified() {
+		return (this.flags & FLAG_VALIDATED) != 0;
+	}
+
+	public @NotNull String getLanguage() {
+		return this.language;
+	}
+
+	/**
+	 * @return Ids of the user's groups, in the order sent by the website (low order to high order).
+	 * The returned array must not be modified.
+	 */
+	public int @NotNull[] getGroupIds() {
+		return this.groupIds;
+	}
+
+	@NotNull Group @NotNull[] groups() {
+		return this.groups;
+	}
+
+	public boolean hasGroup(final int groupId) {
+		for (final int id : this.groupIds) {
+			if (id == groupId) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if the user is in at least one of the groups in the mask
+	 */
+	public boolean hasAnyGroup(final @NotNull GroupMask mask) {
+		if (mask.registry() == this.registry) {
+			final long[] bits = mask.bits();
+			final int length = Math.min(bits.length, this.groupBits.length);
+			for (int i = 0; i < length; i++) {
+				if ((bits[i] & this.groupBits[i]) != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		for (final int groupId : mask.groupIds()) {
+			if (this.hasGroup(groupId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if the user is in at least one staff group
+	 */
+	public boolean isStaff() {
+		return (this.flags & FLAG_STAFF) != 0;
+	}
+
+	/**
+	 * @return The user's group with the highest order, or null if the user is not in any groups
+	 */
+	public @Nullable Group getHighestOrderGroup() {
+		Group highest = null;
+		for (final Group group : this.groups) {
+			if (highest == null || group.getOrder() > highest.getOrder()) {
+				highest = group;
+			}
+		}
+		return highest;
+	}
+
+	@NotNull VerificationInfo verificationInfo() {
+		return new VerificationInfo(this.isVerified(), this.verificationKeys, this.verificationValues);
+	}
+
+	@NotNull CustomProfileField @NotNull[] profileFields() {
+		return this.profileFields;
+	}
+
+	@Nullable String @NotNull[] profileFieldValues() {
+		return this.profileFieldValues;
+	}
+
+	/**
+	 * @param registry Registry for group and profile field definitions, or null to not share them
+	 */
+	static @NotNull UserSnapshot fromJson(final @NotNull JsonObject json, final @Nullable DefinitionRegistry registry) {
+		final int id = json.get("id").getAsInt();
+		final String username = json.get("username").getAsString();
+
+		int flags = 0;
+		if (json.get("banned").getAsBoolean()) {
+			flags |= FLAG_BANNED;
+		}
+		if (json.get("validated").getAsBoolean()) {
+			flags |= FLAG_VALIDATED;
+		}
+
+		long uuidMost = 0;
+		long uuidLeast = 0;
+		if (json.has("uuid")) {
+			final String uuidString = json.get("uuid").getAsString();
+			if (uuidString != null && !uuidString.equals("none") && !uuidString.equals("")) {
+				final UUID uuid = FluxAPI.websiteUuidToJavaUuid(uuidString);
+				uuidMost = uuid.getMostSignificantBits();
+				uuidLeast = uuid.getLeastSignificantBits();
+				flags |= FLAG_HAS_UUID;
+			}
+		}
+
+		final long discordId = json.has("discord_id") ? json.get("discord_id").getAsLong() : -1;
+
+		final JsonArray groupsJson = json.getAsJsonArray("groups");
+		final Group[] groups = new Group[groupsJson.size()];
+		for (int i = 0; i < groups.length; i++) {
+			final JsonObject group = groupsJson.get(i).getAsJsonObject();
+			groups[i] = registry != null ? registry.group(group) : new Group(group);
+		}
+
+		final String[] verificationKeys;
+		final boolean[] verificationValues;
+		if (json.has("verification")) {
+			final JsonObject verification = json.getAsJsonObject("verification");
+			verificationKeys = new String[verification.size()];
+			verificationValues = new boolean[verification.size()];
+			int i = 0;
+			for (final Map.Entry<String, JsonElement> e : verification.entrySet()) {
+				verificationKeys[i] = STRINGS.intern(e.getKey());
+				verificationValues[i] = e.getValue().getAsBoolean();
+				i++;
+			}
+		} else {
+			verificationKeys = new String[0];
+			verificationValues = new boolean[0];
+		}
+
+		final CustomProfileField[] fields;
+		final String[] fieldValues;
+		if (json.has("profile_fields")) {
+			final JsonObject fieldsJson = json.getAsJsonObject("profile_fields");
+			fields = new CustomProfileField[fieldsJson.size()];
+			fieldValues = new String[fieldsJson.size()];
+			int i = 0;
+			for (final Map.Entry<String, JsonElement> e : fieldsJson.entrySet()) {
+				final JsonObject values = e.getValue().getAsJsonObject();
+				fields[i] = profileField(registry,
+						Integer.parseInt(e.getKey()),
+						values.get("name").getAsString(),
+						CustomProfileFieldType.fromFluxTypeInt(values.get("type").getAsInt()),
+						values.get("public").getAsBoolean(),
+						values.get("required").getAsBoolean(),
+						values.get("description").getAsString()
+				);
+				final JsonElement value = values.get("value");
+				fieldValues[i] = value == null || value.isJsonNull() ? null : value.getAsString();
+				i++;
+			}
+		} else {
+			fields = new CustomProfileField[0];
+			fieldValues = new String[0];
+		}
+
+		return new UserSnapshot(
+				id,
+				username,
+				json.get("displayname").getAsString(),
+				(byte) flags,
+				uuidMost,
+				uuidLeast,
+				discordId,
+				json.get("registered_timestamp").getAsLong(),
+				json.get("last_online_timestamp").getAsLong(),
+				json.get("language").getAsString(),
+				groups,
+				registry,
+				verificationKeys,
+				verificationValues,
+				fields,
+				fieldValues
+		);
+	}
+
+	public void writeTo(final @NotNull DataOutput out) throws IOException {
+		out.writeByte(VERSION);
+		out.writeInt(this.id);
+		writeString(out, this.username);
+		writeString(out, this.displayName);
+		out.writeByte(this.flags & ~FLAG_STAFF);
+		if (this.hasUniqueId()) {
+			out.writeLong(this.uuidMost);
+			out.writeLong(this.uuidLeast);
+		}
+		out.writeLong(this.discordId);
+		out.writeLong(this.registeredTimestamp);
+		out.writeLong(this.lastOnlineTimestamp);
+		writeString(out, this.language);
+
+		out.writeShort(this.groups.length);
+		for (final Group group : this.groups) {
+			out.writeInt(group.getId());
+			writeString(out, group.getName());
+			out.writeInt(group.getOrder());
+			out.writeBoolean(group.isStaff());
+		}
+
+		out.writeShort(this.verificationKeys.length);
+		for (int i = 0; i < this.verificationKeys.length; i++) {
+			writeString(out, this.verificationKeys[i]);
+			out.writeBoolean(this.verificationValues[i]);
+		}
+
+		out.writeShort(this.profileFields.length);
+		for (int i = 0; i < this.profileFields.length; i++) {
+			final CustomProfileField field = this.profileFields[i];
+			out.writeInt(field.getId());
+			writeString(out, field.getName());
+			out.writeByte(field.getType().getFluxTypeInt());
+			out.writeBoolean(field.isPublic());
+			out.writeBoolean(field.isRequired());
+			writeString(out, field.getDescription());
+			final String value = this.profileFieldValues[i];
+			out.writeBoolean(value != null);
+			if (value != null) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	public static @NotNull UserSnapshot readFrom(final @NotNull DataInput in) throws IOException {
+		return readFrom(in, null);
+	}
+
+	/**
+	 * @param registry Registry for group and profile field definitions, or null to not share them
+	 */
+	static @NotNull UserSnapshot readFrom(final @NotNull DataInput in, final @Nullable DefinitionRegistry registry) throws IOException {
+		final byte version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+
+		final int id = in.readInt();
+		final String username = readString(in);
+		final String displayName = readString(in);
+		final byte flags = in.readByte();
+		final long uuidMost;
+		final long uuidLeast;
+		if ((flags & FLAG_HAS_UUID) != 0) {
+			uuidMost = in.readLong();
+			uuidLeast = in.readLong();
+		} else {
+			uuidMost = 0;
+			uuidLeast = 0;
+		}
+		final long discordId = in.readLong();
+		final long registered = in.readLong();
+		final long lastOnline = in.readLong();
+		final String language = readString(in);
+
+		final Group[] groups = new Group[in.readUnsignedShort()];
+		for (int i = 0; i < groups.length; i++) {
+			final int groupId = in.readInt();
+			final String name = readString(in);
+			final int order = in.readInt();
+			final boolean staff = in.readBoolean();
+			groups[i] = registry != null ? registry.group(groupId, name, order, staff) : new Group(groupId, STRINGS.intern(name), order, staff);
+		}
+
+		final int verificationCount = in.readUnsignedShort();
+		final String[] verificationKeys = new String[verificationCount];
+		final boolean[] verificationValues = new boolean[verificationCount];
+		for (int i = 0; i < verificationCount; i++) {
+			verificationKeys[i] = STRINGS.intern(readString(in));
+			verificationValues[i] = in.readBoolean();
+		}
+
+		final int fieldCount = in.readUnsignedShort();
+		final CustomProfileField[] fields = new CustomProfileField[fieldCount];
+		final String[] fieldValues = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++) {
+			final int fieldId = in.readInt();
+			final String name = readString(in);
+			final CustomProfileFieldType type;
+			try {
+				type = CustomProfileFieldType.fromFluxTypeInt(in.readByte());
+			} catch (final IllegalArgumentException e) {
+				throw new IOException("Invalid profile field type", e);
+			}
+			fields[i] = profileField(registry,
+					fieldId,
+					name,
+					type,
+					in.readBoolean(),
+					in.readBoolean(),
+					readString(in)
+			);
+			fieldValues[i] = in.readBoolean() ? readString(in) : null;
+		}
+
+		return new UserSnapshot(id, username, displayName, flags, uuidMost, uuidLeast, discordId, registered, lastOnline,
+				language, groups, registry, verificationKeys, verificationValues, fields, fieldValues);
+	}
+
+	private static @NotNull CustomProfileField profileField(final @Nullable DefinitionRegistry registry, final int id, final @NotNull String name,
+															final @NotNull CustomProfileFieldType type, final boolean isPublic,
+															final boolean isRequired, final @NotNull String description) {
+		if (registry != null) {
+			return registry.profileField(id, name, type, isPublic, isRequired, description);
+		}
+		return new CustomProfileField(id, STRINGS.intern(name), type, isPublic, isRequired, STRINGS.intern(description));
+	}
+
+	/**
+	 * Strings are written as a length and UTF-8 bytes, {@link DataOutput#writeUTF(String)} is limited to 65535 bytes,
+	 * which a long profile field value can exceed
+	 */
+	private static void writeString(final @NotNull DataOutput out, final @NotNull String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static @NotNull String readString(final @NotNull DataInput in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0 || length > MAX_STRING_BYTES) {
+			throw new IOException("Invalid string length " + length);
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public byte @NotNull[] toBytes() {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			this.writeTo(out);
+		} catch (final IOException e) {
+			throw new IllegalStateException("ByteArrayOutputStream can't throw IOException", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static @NotNull UserSnapshot fromBytes(final byte @NotNull[] bytes) throws IOException {
+		return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+}
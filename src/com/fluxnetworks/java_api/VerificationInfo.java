@@ -1,17 +1,17 @@
 package com.fluxnetworks.java_api;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import org.jetbrains.annotations.NotNull;
 
 public class VerificationInfo {
 
 	private final boolean verified;
-	private final @NotNull JsonObject json;
+	private final @NotNull String @NotNull[] keys;
+	private final boolean @NotNull[] values;
 
-	VerificationInfo(final boolean verified, @NotNull final JsonObject json) {
+	VerificationInfo(final boolean verified, @NotNull final String @NotNull[] keys, final boolean @NotNull[] values) {
 		this.verified = verified;
-		this.json = json;
+		this.keys = keys;
+		this.values = values;
 	}
 
 	public boolean isVerified() {
@@ -19,12 +19,12 @@ public class VerificationInfo {
 	}
 
 	public boolean isVerifiedCustom(@NotNull final String name) {
-		final JsonElement e = this.json.get(name);
-		if (e == null) {
-			throw new UnsupportedOperationException("The API did not return verification for '" + name + "'");
-		} else {
-			return e.getAsBoolean();
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.keys[i].equals(name)) {
+				return this.values[i];
+			}
 		}
+		throw new UnsupportedOperationException("The API did not return verification for '" + name + "'");
 	}
 
 	public boolean isVerifiedEmail() {
@@ -1,10 +1,14 @@
 package com.fluxnetworks.java_api.modules.websend;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.fluxnetworks.java_api.FluxException;
+import com.fluxnetworks.java_api.FluxPublisher;
 import com.fluxnetworks.java_api.RequestHandler;
+import com.fluxnetworks.java_api.RequestPriority;
+import com.fluxnetworks.java_api.Route;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -12,17 +16,29 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class WebsendAPI {
 
+	private static final Route COMMANDS = Route.of("websend/commands");
+	private static final Route CONSOLE = Route.of("websend/console", RequestPriority.BACKGROUND);
+	// Idle time after which a command publisher's thread stops, it is started again by the next poll
+	private static final long PUBLISHER_KEEP_ALIVE_SECONDS = 10;
+
 	private final @NotNull RequestHandler requests;
 
 	public WebsendAPI(@NotNull RequestHandler requests) {
 		this.requests = Objects.requireNonNull(requests, "Request handler is null");
 	}
 
+	/**
+	 * Get commands waiting for a server. The website removes commands it returns, so every command is
+	 * returned once and should be executed by the caller.
+	 */
 	public @NotNull List<WebsendCommand> getCommands(int serverId) throws FluxException {
-		JsonObject response = this.requests.get("websend/commands","server_id", serverId);
+		JsonObject response = this.requests.get(COMMANDS, "server_id", serverId);
 		JsonArray commandsJson = response.getAsJsonArray("commands");
 		List<WebsendCommand> commands = new ArrayList<>(commandsJson.size());
 		for (JsonElement e : commandsJson) {
@@ -34,6 +50,52 @@ public class WebsendAPI {
 		return Collections.unmodifiableList(commands);
 	}
 
+	/**
+	 * Poll commands for a server only while the subscriber has requested more commands than it has received.
+	 * When there are no commands, the next poll is after the interval.
+	 *
+	 * <p>Like {@link #getCommands(int)}, a poll removes all waiting commands from the website, even if the
+	 * subscriber has requested fewer. Extra commands are kept until the subscriber requests them. Commands that
+	 * were polled but not delivered when the subscription is cancelled or fails are passed to {@code unsent},
+	 * so they can be executed some other way.</p>
+	 *
+	 * <p>Polls block, so they run on a thread of the publisher instead of the API executor. Commands are
+	 * delivered on that thread as well.</p>
+	 * @param serverId Server to poll commands for
+	 * @param interval Time to wait after a poll without commands
+	 * @param unit Time unit of the interval
+	 * @param unsent Called with the commands that were polled but not delivered, if there are any
+	 * @return Publisher of commands
+	 */
+	public @NotNull FluxPublisher<WebsendCommand> commandPublisher(int serverId, long interval, @NotNull TimeUnit unit,
+																   @NotNull Consumer<@NotNull List<WebsendCommand>> unsent) {
+		Objects.requireNonNull(unsent, "Unsent command handler is null");
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("Flux-Java-API-websend-" + serverId)
+				.setDaemon(true)
+				.build());
+		executor.setKeepAliveTime(PUBLISHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+		executor.allowCoreThreadTimeOut(true);
+		return new FluxPublisher<>(executor, wakeUp -> new FluxPublisher.Source<WebsendCommand>() {
+
+			@Override
+			public boolean fetch(long demand, @NotNull Consumer<WebsendCommand> sink) throws FluxException {
+				for (WebsendCommand command : getCommands(serverId)) {
+					sink.accept(command);
+				}
+				return true;
+			}
+
+			@Override
+			public void close(@NotNull List<WebsendCommand> undelivered) {
+				if (!undelivered.isEmpty()) {
+					unsent.accept(Collections.unmodifiableList(undelivered));
+				}
+			}
+
+		}, interval, unit);
+	}
+
 	public void sendConsoleLog(int serverId, @NotNull Collection<String> lines) throws FluxException {
 		JsonObject body = new JsonObject();
 		body.addProperty("server_id", serverId);
@@ -42,7 +104,7 @@ public class WebsendAPI {
 			content.add(line);
 		}
 		body.add("content", content);
-		this.requests.post("websend/console", body);
+		this.requests.post(CONSOLE, body);
 	}
 
 }
@@ -0,0 +1,666 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process website for integration and load tests, implementing the API routes used by {@link FluxAPI}
+ * with in-memory users, groups and announcements. Latency and failures can be injected, and requests are
+ * counted per route.
+ *
+ * <pre>{@code
+ * try (MockFluxServer server = new MockFluxServer()) {
+ *     server.addGroup(1, "Member", 10, false);
+ *     server.addUser("jeroen", uuid).addGroup(1);
+ *     final FluxAPI api = FluxAPI.builder(server.getApiUrl(), server.getApiKey()).build();
+ *     ...
+ * }
+ * }</pre>
+ *
+ * <p>GET responses have an ETag, and requests with a matching {@code If-None-Match} header are answered with
+ * 304 Not Modified, see {@link #setConditionalResponses(boolean)}.</p>
+ *
+ * <p>Requests to the user info route are recognized by their query (like {@code ?id=1}), since the
+ * client doesn't have a separate path for it yet.</p>
+ */
+public final class MockFluxServer implements AutoCloseable {
+
+	private static final String API_KEY = "mock-api-key";
+	private static final String BASE_PATH = "/api/";
+
+	public enum Fault {
+
+		/**
+		 * Cloudflare's "web server returned an unknown error" page
+		 */
+		CLOUDFLARE_520,
+		TOO_MANY_REQUESTS_429,
+		API_DISABLED,
+		MALFORMED_JSON
+
+	}
+
+	private final @NotNull HttpServer server;
+	private final @NotNull ExecutorService executor;
+
+	private final @NotNull Map<Integer, MockUser> users = new ConcurrentHashMap<>();
+	private final @NotNull Map<Integer, JsonObject> groups = Collections.synchronizedMap(new LinkedHashMap<>());
+	private final @NotNull List<JsonObject> announcements = new CopyOnWriteArrayList<>();
+	private final @NotNull Map<Integer, List<String>> websendCommands = new ConcurrentHashMap<>();
+	private final @NotNull AtomicInteger nextUserId = new AtomicInteger(1);
+
+	private final @NotNull Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+	private final @NotNull Map<String, List<JsonObject>> postBodies = new ConcurrentHashMap<>();
+
+	private final @NotNull LongAdder notModifiedCount = new LongAdder();
+	private volatile boolean conditionalResponses = true;
+
+	private volatile long latencyNanos;
+	// Guarded by faultRates
+	private final @NotNull Map<Fault, Double> faultRates = new EnumMap<>(Fault.class);
+	private final @NotNull Map<Fault, Integer> faultsRemaining = new EnumMap<>(Fault.class);
+	private final @NotNull Random random = new Random(0);
+
+	/**
+	 * Start a server on a random port on the loopback interface
+	 */
+	public MockFluxServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.executor = Executors.newCachedThreadPool(r -> {
+			final Thread thread = new Thread(r, "MockFluxServer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+	}
+
+	public @NotNull URL getApiUrl() {
+		try {
+			return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + BASE_PATH.substring(0, BASE_PATH.length() - 1));
+		} catch (final MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public @NotNull String getApiKey() {
+		return API_KEY;
+	}
+
+	public @NotNull MockUser addUser(final @NotNull String username, final @Nullable UUID uuid) {
+		final MockUser user = new MockUser(this.nextUserId.getAndIncrement(), username, uuid);
+		this.users.put(user.id, user);
+		return user;
+	}
+
+	public @Nullable MockUser getUser(final int id) {
+		return this.users.get(id);
+	}
+
+	public int getUserCount() {
+		return this.users.size();
+	}
+
+	public void addGroup(final int id, final @NotNull String name, final int order, final boolean staff) {
+		final JsonObject group = new JsonObject();
+		group.addProperty("id", id);
+		group.addProperty("name", name);
+		group.addProperty("order", order);
+		group.addProperty("staff", staff);
+		this.groups.put(id, group);
+	}
+
+	/**
+	 * @param groupIds Groups that can see this announcement
+	 */
+	public void addAnnouncement(final int id, final @NotNull String header, final @NotNull String message, final int @NotNull... groupIds) {
+		final JsonObject announcement = new JsonObject();
+		announcement.addProperty("id", id);
+		announcement.addProperty("header", header);
+		announcement.addProperty("message", message);
+		announcement.add("pages", new JsonArray());
+		final JsonArray groups = new JsonArray();
+		for (final int groupId : groupIds) {
+			groups.add(groupId);
+		}
+		announcement.add("groups", groups);
+		this.announcements.add(announcement);
+	}
+
+	public void addWebsendCommand(final int serverId, final @NotNull String command) {
+		this.websendCommands.computeIfAbsent(serverId, k -> new CopyOnWriteArrayList<>()).add(command);
+	}
+
+	/**
+	 * Delay every response
+	 */
+	public void setLatency(final long latency, final @NotNull TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+	}
+
+	/**
+	 * Fail a fraction of requests. Faults are chosen by a random generator with a fixed seed, so a test
+	 * making the same requests in the same order sees the same failures.
+	 * @param rate Fraction of requests to fail, between 0 and 1
+	 */
+	public void setFaultRate(final @NotNull Fault fault, final double rate) {
+		synchronized (this.faultRates) {
+			this.faultRates.put(fault, rate);
+		}
+	}
+
+	/**
+	 * Fail the next requests
+	 * @param count Number of requests to fail
+	 */
+	public void failNext(final @NotNull Fault fault, final int count) {
+		synchronized (this.faultRates) {
+			this.faultsRemaining.put(fault, count);
+		}
+	}
+
+	/**
+	 * @param route Route like {@code users} or {@code users/{id}/notifications}, with {@code {id}} in place
+	 * of user ids, or {@code user-info} for user lookups
+	 * @return Number of requests to the route, including failed requests
+	 */
+	public long getRequestCount(final @NotNull String route) {
+		final LongAdder count = this.requestCounts.get(route);
+		return count != null ? count.sum() : 0;
+	}
+
+	public long getRequestCount() {
+		return this.requestCounts.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	/**
+	 * @return Bodies of POST requests to a route, in the order they were received
+	 */
+	public @NotNull List<JsonObject> getPostBodies(final @NotNull String route) {
+		return Collections.unmodifiableList(this.postBodies.getOrDefault(route, Collections.emptyList()));
+	}
+
+	/**
+	 * @param conditionalResponses True to send ETags and answer matching requests with 304 Not Modified, enabled by default
+	 */
+	public void setConditionalResponses(final boolean conditionalResponses) {
+		this.conditionalResponses = conditionalResponses;
+	}
+
+	/**
+	 * @return Number of requests answered with 304 Not Modified
+	 */
+	public long getNotModifiedCount() {
+		return this.notModifiedCount.sum();
+	}
+
+	public void resetCounters() {
+		this.requestCounts.clear();
+		this.postBodies.clear();
+		this.notModifiedCount.reset();
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	private void handle(final @NotNull HttpExchange exchange) throws IOException {
+		try {
+			final String path = exchange.getRequestURI().getPath();
+			final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			final String route = path.startsWith(BASE_PATH) ? path.substring(BASE_PATH.length()) : path;
+			final String countedRoute = route.isEmpty() ? "user-info" : route.replaceAll("/\\d+(/|$)", "/{id}$1");
+			this.requestCounts.computeIfAbsent(countedRoute, k -> new LongAdder()).increment();
+
+			JsonObject body = null;
+			if (exchange.getRequestMethod().equals("POST")) {
+				try (InputStream in = exchange.getRequestBody()) {
+					final JsonElement element = JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+					body = element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+				}
+				this.postBodies.computeIfAbsent(countedRoute, k -> new CopyOnWriteArrayList<>()).add(body);
+			}
+
+			final long latency = this.latencyNanos;
+			if (latency > 0) {
+				TimeUnit.NANOSECONDS.sleep(latency);
+			}
+
+			final Fault fault = this.nextFault();
+			if (fault != null) {
+				switch (fault) {
+					case CLOUDFLARE_520:
+						send(exchange, 520, "<html><body>Web server is returning an unknown error</body></html>");
+						return;
+					case TOO_MANY_REQUESTS_429:
+						exchange.getResponseHeaders().add("Retry-After", "1");
+						send(exchange, 429, "Too Many Requests");
+						return;
+					case API_DISABLED:
+						send(exchange, 200, "API is disabled");
+						return;
+					case MALFORMED_JSON:
+						send(exchange, 200, "{\"error\":false,\"users\":[");
+						return;
+				}
+			}
+
+			if (!API_KEY.equals(exchange.getRequestHeaders().getFirst("X-API-Key"))) {
+				send(exchange, 401, error(ApiError.INVALID_API_KEY));
+				return;
+			}
+
+			final String response = this.respond(route, query, body);
+			if (body == null && this.conditionalResponses) {
+				final String etag = etag(response);
+				if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					this.notModifiedCount.increment();
+					exchange.sendResponseHeaders(304, -1);
+					return;
+				}
+				exchange.getResponseHeaders().add("ETag", etag);
+			}
+			send(exchange, 200, response);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private @Nullable Fault nextFault() {
+		synchronized (this.faultRates) {
+			for (final Map.Entry<Fault, Integer> e : this.faultsRemaining.entrySet()) {
+				if (e.getValue() > 0) {
+					e.setValue(e.getValue() - 1);
+					return e.getKey();
+				}
+			}
+			for (final Map.Entry<Fault, Double> e : this.faultRates.entrySet()) {
+				if (this.random.nextDouble() < e.getValue()) {
+					return e.getKey();
+				}
+			}
+			return null;
+		}
+	}
+
+	private @NotNull String respond(final @NotNull String route, final @NotNull Map<String, String> query, final @Nullable JsonObject body) {
+		final String[] parts = route.split("/");
+		switch (parts[0]) {
+			case "":
+				return this.userInfo(query);
+			case "info":
+				return this.info();
+			case "groups":
+				return this.groups(query);
+			case "users":
+				if (parts.length == 1) {
+					return this.userList(query);
+				} else if (parts[1].equals("register")) {
+					return this.register(body);
+				}
+				final MockUser user = parts[1].matches("\\d+") ? this.users.get(Integer.parseInt(parts[1])) : null;
+				if (user == null) {
+					return error(ApiError.UNABLE_TO_FIND_USER);
+				}
+				return this.userRoute(user, parts.length > 2 ? route.substring(route.indexOf('/', 6) + 1) : "", body);
+			case "websend":
+				if (route.equals("websend/commands")) {
+					return this.websendCommands(query);
+				}
+				return success(new JsonObject());
+			case "discord":
+			case "integration":
+			case "minecraft":
+			case "reports":
+				return success(new JsonObject());
+			default:
+				return error(ApiError.INVALID_API_METHOD);
+		}
+	}
+
+	private @NotNull String info() {
+		final JsonObject json = new JsonObject();
+		json.addProperty("flux_version", "2.0.2");
+		json.addProperty("language", "EnglishUK");
+		final JsonArray modules = new JsonArray();
+		modules.add("Core");
+		modules.add("Forum");
+		json.add("modules", modules);
+		return success(json);
+	}
+
+	private @NotNull String groups(final @NotNull Map<String, String> query) {
+		final JsonArray array = new JsonArray();
+		synchronized (this.groups) {
+			for (final JsonObject group : this.groups.values()) {
+				if ((!query.containsKey("id") || group.get("id").getAsString().equals(query.get("id"))) &&
+						(!query.containsKey("name") || group.get("name").getAsString().equals(query.get("name")))) {
+					array.add(group);
+				}
+			}
+		}
+		final JsonObject json = new JsonObject();
+		json.add("groups", array);
+		return success(json);
+	}
+
+	private @NotNull String userList(final @NotNull Map<String, String> query) {
+		final boolean any = "OR".equals(query.get("operator"));
+		final JsonArray array = new JsonArray();
+		for (final MockUser user : this.users.values()) {
+			final List<Boolean> matches = new ArrayList<>();
+			if (query.containsKey("banned")) {
+				matches.add(user.banned == Boolean.parseBoolean(query.get("banned")));
+			}
+			if (query.containsKey("verified")) {
+				matches.add(user.verified == Boolean.parseBoolean(query.get("verified")));
+			}
+			if (query.containsKey("discord_linked")) {
+				matches.add((user.discordId > 0) == Boolean.parseBoolean(query.get("discord_linked")));
+			}
+			if (query.containsKey("group_id")) {
+				matches.add(user.groupIds.contains(Integer.parseInt(query.get("group_id"))));
+			}
+			if (matches.isEmpty() || (any ? matches.contains(true) : !matches.contains(false))) {
+				final JsonObject json = new JsonObject();
+				json.addProperty("id", user.id);
+				json.addProperty("username", user.username);
+				if (user.uuid != null) {
+					json.addProperty("uuid", user.uuid.toString().replace("-", ""));
+				}
+				array.add(json);
+			}
+		}
+		final JsonObject json = new JsonObject();
+		json.add("users", array);
+		return success(json);
+	}
+
+	private @NotNull String userInfo(final @NotNull Map<String, String> query) {
+		MockUser found = null;
+		for (final MockUser user : this.users.values()) {
+			if (String.valueOf(user.id).equals(query.get("id")) ||
+					user.username.equals(query.get("username")) ||
+					user.uuid != null && (user.uuid.toString().equals(query.get("uuid")) || user.uuid.toString().replace("-", "").equals(query.get("uuid"))) ||
+					user.discordId > 0 && String.valueOf(user.discordId).equals(query.get("discord_id"))) {
+				found = user;
+				break;
+			}
+		}
+
+		final JsonObject json = new JsonObject();
+		if (found == null) {
+			json.addProperty("exists", false);
+			return success(json);
+		}
+
+		json.addProperty("exists", true);
+		json.addProperty("id", found.id);
+		json.addProperty("username", found.username);
+		json.addProperty("displayname", found.username);
+		if (found.uuid != null) {
+			json.addProperty("uuid", found.uuid.toString().replace("-", ""));
+		}
+		if (found.discordId > 0) {
+			json.addProperty("discord_id", found.discordId);
+		}
+		json.addProperty("banned", found.banned);
+		json.addProperty("validated", found.verified);
+		json.addProperty("registered_timestamp", found.registeredTimestamp);
+		json.addProperty("last_online_timestamp", found.lastOnlineTimestamp);
+		json.addProperty("language", "EnglishUK");
+		final JsonArray groups = new JsonArray();
+		for (final int groupId : found.groupIds) {
+			final JsonObject group = this.groups.get(groupId);
+			if (group != null) {
+				groups.add(group);
+			}
+		}
+		json.add("groups", groups);
+		return success(json);
+	}
+
+	private @NotNull String userRoute(final @NotNull MockUser user, final @NotNull String action, final @Nullable JsonObject body) {
+		final JsonObject json = new JsonObject();
+		switch (action) {
+			case "announcements":
+				final JsonArray announcements = new JsonArray();
+				for (final JsonObject announcement : this.announcements) {
+					for (final JsonElement groupId : announcement.getAsJsonArray("groups")) {
+						if (user.groupIds.contains(groupId.getAsInt())) {
+							announcements.add(announcement);
+							break;
+						}
+					}
+				}
+				json.add("announcements", announcements);
+				return success(json);
+			case "notifications":
+				final JsonArray notifications = new JsonArray();
+				for (final String message : user.notifications) {
+					final JsonObject notification = new JsonObject();
+					notification.addProperty("type", "message");
+					notification.addProperty("message", message);
+					notification.addProperty("url", "https://example.com/notifications");
+					notifications.add(notification);
+				}
+				json.add("notifications", notifications);
+				return success(json);
+			case "ban":
+				user.banned = true;
+				return success(json);
+			case "update-username":
+				if (body != null && body.has("username")) {
+					user.username = body.get("username").getAsString();
+				}
+				return success(json);
+			case "groups/add":
+				if (body != null && body.has("groups")) {
+					for (final JsonElement groupId : body.getAsJsonArray("groups")) {
+						user.groupIds.addIfAbsent(groupId.getAsInt());
+					}
+				}
+				return success(json);
+			default:
+				return error(ApiError.INVALID_API_METHOD);
+		}
+	}
+
+	private @NotNull String register(final @Nullable JsonObject body) {
+		if (body == null || !body.has("username")) {
+			return error(ApiError.INVALID_GET_POST_CONTENTS);
+		}
+		final String username = body.get("username").getAsString();
+		for (final MockUser user : this.users.values()) {
+			if (user.username.equalsIgnoreCase(username)) {
+				return error(ApiError.USERNAME_ALREADY_EXISTS);
+			}
+		}
+		final UUID uuid = body.has("uuid") ? FluxAPI.websiteUuidToJavaUuid(body.get("uuid").getAsString()) : null;
+		final MockUser user = this.addUser(username, uuid);
+		final JsonObject json = new JsonObject();
+		json.addProperty("user_id", user.id);
+		return success(json);
+	}
+
+	private @NotNull String websendCommands(final @NotNull Map<String, String> query) {
+		final JsonArray array = new JsonArray();
+		final List<String> commands = query.containsKey("server_id")
+				? this.websendCommands.remove(Integer.parseInt(query.get("server_id")))
+				: null;
+		if (commands != null) {
+			int id = 1;
+			for (final String command : commands) {
+				final JsonObject json = new JsonObject();
+				json.addProperty("id", id++);
+				json.addProperty("command", command);
+				array.add(json);
+			}
+		}
+		final JsonObject json = new JsonObject();
+		json.add("commands", array);
+		return success(json);
+	}
+
+	private static @NotNull String success(final @NotNull JsonObject json) {
+		json.addProperty("error", false);
+		return json.toString();
+	}
+
+	private static @NotNull String error(final int code) {
+		final JsonObject json = new JsonObject();
+		json.addProperty("error", true);
+		json.addProperty("code", code);
+		return json.toString();
+	}
+
+	private static @NotNull Map<String, String> parseQuery(final @Nullable String rawQuery) throws UnsupportedEncodingException {
+		final Map<String, String> query = new LinkedHashMap<>();
+		if (rawQuery == null) {
+			return query;
+		}
+		// The client's user info route ends in '?', so the query may start with extra question marks
+		for (final String pair : rawQuery.replaceFirst("^\\?+", "").split("&")) {
+			final int equals = pair.indexOf('=');
+			if (equals > 0) {
+				query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+		return query;
+	}
+
+	private static @NotNull String etag(final @NotNull String response) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(response.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder etag = new StringBuilder("\"");
+			for (int i = 0; i < 8; i++) {
+				etag.append(String.format("%02x", digest[i]));
+			}
+			return etag.append('"').toString();
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void send(final @NotNull HttpExchange exchange, final int code, final @NotNull String response) throws IOException {
+		final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * User stored by the mock server. Changes are visible to the next request.
+	 */
+	public static final class MockUser {
+
+		private final int id;
+		private volatile @NotNull String username;
+		private final @Nullable UUID uuid;
+		private volatile boolean banned;
+		private volatile boolean verified = true;
+		private volatile long discordId = -1;
+		private volatile long registeredTimestamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+		private volatile long lastOnlineTimestamp = this.registeredTimestamp;
+		private final @NotNull CopyOnWriteArrayList<Integer> groupIds = new CopyOnWriteArrayList<>();
+		private final @NotNull List<String> notifications = new CopyOnWriteArrayList<>();
+
+		private MockUser(final int id, final @NotNull String username, final @Nullable UUID uuid) {
+			this.id = id;
+			this.username = Objects.requireNonNull(username, "Username is null");
+			this.uuid = uuid;
+		}
+
+		public int getId() {
+			return this.id;
+		}
+
+		public @NotNull String getUsername() {
+			return this.username;
+		}
+
+		public boolean isBanned() {
+			return this.banned;
+		}
+
+		public @NotNull MockUser setBanned(final boolean banned) {
+			this.banned = banned;
+			return this;
+		}
+
+		public @NotNull MockUser setVerified(final boolean verified) {
+			this.verified = verified;
+			return this;
+		}
+
+		public @NotNull MockUser setDiscordId(final long discordId) {
+			this.discordId = discordId;
+			return this;
+		}
+
+		public @NotNull MockUser setTimestamps(final long registeredTimestamp, final long lastOnlineTimestamp) {
+			this.registeredTimestamp = registeredTimestamp;
+			this.lastOnlineTimestamp = lastOnlineTimestamp;
+			return this;
+		}
+
+		public @NotNull MockUser addGroup(final int groupId) {
+			this.groupIds.addIfAbsent(groupId);
+			return this;
+		}
+
+		public @NotNull MockUser removeGroup(final int groupId) {
+			this.groupIds.remove((Integer) groupId);
+			return this;
+		}
+
+		public @NotNull MockUser addNotification(final @NotNull String message) {
+			this.notifications.add(message);
+			return this;
+		}
+
+	}
+
+}
@@ -0,0 +1,153 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class RequestDispatcherTest {
+
+	private static final int UNLIMITED = Integer.MAX_VALUE;
+
+	private final @NotNull ExecutorService threads = Executors.newCachedThreadPool();
+
+	@After
+	public void stopThreads() {
+		this.threads.shutdownNow();
+	}
+
+	private static @NotNull RequestDispatcher dispatcher(final int maxConcurrent, final int queueLimit, final @NotNull RequestDispatcher parent) {
+		return new RequestDispatcher(maxConcurrent, new int[] { maxConcurrent, maxConcurrent, maxConcurrent },
+				new int[] { queueLimit, queueLimit, queueLimit }, parent);
+	}
+
+	private static @NotNull RequestDispatcher dispatcher(final int maxConcurrent, final int queueLimit) {
+		return new RequestDispatcher(maxConcurrent, new int[] { maxConcurrent, maxConcurrent, maxConcurrent },
+				new int[] { queueLimit, queueLimit, queueLimit });
+	}
+
+	/**
+	 * Acquire on another thread, record the name once started and release right away
+	 */
+	private @NotNull Future<?> acquireAndRelease(final @NotNull RequestDispatcher dispatcher, final @NotNull RequestPriority priority,
+												 final @NotNull String name, final @NotNull List<String> started) {
+		return this.threads.submit(() -> {
+			dispatcher.acquire(priority, Deadline.NONE, null);
+			started.add(name);
+			dispatcher.release(priority);
+			return null;
+		});
+	}
+
+	private static void awaitTrue(final @NotNull BooleanSupplier condition) throws InterruptedException {
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.nanoTime() < end);
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void fullQueueRejectsRequests() throws Exception {
+		final RequestDispatcher dispatcher = dispatcher(1, 1);
+		dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, null);
+		final List<String> started = Collections.synchronizedList(new ArrayList<>());
+		final Future<?> waiting = this.acquireAndRelease(dispatcher, RequestPriority.NORMAL, "waiting", started);
+		awaitTrue(() -> dispatcher.getWaiting(RequestPriority.NORMAL) == 1);
+
+		assertThrows(FluxException.class, () -> dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, null));
+		// Other priorities have their own queue
+		this.acquireAndRelease(dispatcher, RequestPriority.INTERACTIVE, "interactive", started);
+		awaitTrue(() -> dispatcher.getWaiting(RequestPriority.INTERACTIVE) == 1);
+
+		dispatcher.release(RequestPriority.NORMAL);
+		waiting.get(5, TimeUnit.SECONDS);
+		awaitTrue(() -> started.size() == 2);
+		assertEquals(Arrays.asList("interactive", "waiting"), started);
+	}
+
+	@Test
+	public void higherPriorityStartsFirst() throws Exception {
+		final RequestDispatcher dispatcher = dispatcher(1, UNLIMITED);
+		dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, null);
+		final List<String> started = Collections.synchronizedList(new ArrayList<>());
+		this.acquireAndRelease(dispatcher, RequestPriority.BACKGROUND, "background", started);
+		awaitTrue(() -> dispatcher.getWaiting(RequestPriority.BACKGROUND) == 1);
+		this.acquireAndRelease(dispatcher, RequestPriority.NORMAL, "normal", started);
+		awaitTrue(() -> dispatcher.getWaiting(RequestPriority.NORMAL) == 1);
+		this.acquireAndRelease(dispatcher, RequestPriority.INTERACTIVE, "interactive", started);
+		awaitTrue(() -> dispatcher.getWaiting(RequestPriority.INTERACTIVE) == 1);
+
+		dispatcher.release(RequestPriority.NORMAL);
+		awaitTrue(() -> started.size() == 3);
+		assertEquals(Arrays.asList("interactive", "normal", "background"), started);
+	}
+
+	@Test
+	public void waitingStopsAtDeadline() throws Exception {
+		final RequestDispatcher dispatcher = dispatcher(1, UNLIMITED);
+		dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, null);
+		final long start = System.nanoTime();
+		final RequestCancelledException e = assertThrows(RequestCancelledException.class,
+				() -> dispatcher.acquire(RequestPriority.NORMAL, start + TimeUnit.MILLISECONDS.toNanos(100), null));
+		assertTrue(e.isDeadlineExceeded());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(0, dispatcher.getWaiting(RequestPriority.NORMAL));
+
+		// The request that gave up doesn't hold a slot
+		dispatcher.release(RequestPriority.NORMAL);
+		dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, null);
+	}
+
+	@Test
+	public void waitingStopsWhenCancelled() throws Exception {
+		final RequestDispatcher dispatcher = dispatcher(1, UNLIMITED);
+		dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, null);
+		final Deadline deadline = Deadline.none();
+		final Future<?> waiting = this.threads.submit(() -> {
+			dispatcher.acquire(RequestPriority.NORMAL, Deadline.NONE, deadline);
+			return null;
+		});
+		awaitTrue(() -> dispatcher.getWaiting(RequestPriority.NORMAL) == 1);
+		deadline.cancel();
+		awaitTrue(waiting::isDone);
+		assertEquals(0, dispatcher.getWaiting(RequestPriority.NORMAL));
+	}
+
+	@Test
+	public void sitesTakeTurns() throws Exception {
+		final RequestDispatcher group = dispatcher(1, UNLIMITED);
+		final RequestDispatcher busy = dispatcher(UNLIMITED, UNLIMITED, group);
+		final RequestDispatcher quiet = dispatcher(UNLIMITED, UNLIMITED, group);
+		final RequestDispatcher other = dispatcher(UNLIMITED, UNLIMITED, group);
+		other.acquire(RequestPriority.NORMAL, Deadline.NONE, null);
+
+		final List<String> started = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < 4; i++) {
+			this.acquireAndRelease(busy, RequestPriority.NORMAL, "busy", started);
+		}
+		awaitTrue(() -> group.getWaiting(RequestPriority.NORMAL) == 4);
+		for (int i = 0; i < 2; i++) {
+			this.acquireAndRelease(quiet, RequestPriority.NORMAL, "quiet", started);
+		}
+		awaitTrue(() -> group.getWaiting(RequestPriority.NORMAL) == 6);
+
+		other.release(RequestPriority.NORMAL);
+		awaitTrue(() -> started.size() == 6);
+		assertEquals(Arrays.asList("busy", "quiet", "busy", "quiet", "busy", "busy"), started);
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonObject;
+import com.fluxnetworks.java_api.exception.ApiDisabledException;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Requests against a {@link MockFluxServer}: how faults surface, conditional requests and deadlines.
+ */
+public class RequestHandlerTest {
+
+	private MockFluxServer server;
+
+	@Before
+	public void startServer() throws IOException {
+		this.server = new MockFluxServer();
+		this.server.addGroup(1, "Member", 10, false);
+	}
+
+	@After
+	public void stopServer() {
+		this.server.close();
+	}
+
+	private @NotNull FluxApiBuilder builder() {
+		return FluxAPI.builder(this.server.getApiUrl(), this.server.getApiKey());
+	}
+
+	@Test
+	public void faultsFailOnlyTheirRequest() throws FluxException {
+		final FluxAPI api = this.builder().build();
+		for (final MockFluxServer.Fault fault : MockFluxServer.Fault.values()) {
+			this.server.resetCounters();
+			this.server.failNext(fault, 1);
+			final Class<? extends FluxException> expected = fault == MockFluxServer.Fault.API_DISABLED
+					? ApiDisabledException.class
+					: FluxException.class;
+			assertThrows(fault.name(), expected, api::getWebsite);
+			// Not retried by the client, the next request of the caller succeeds
+			assertEquals(fault.name(), 1, this.server.getRequestCount());
+			api.getWebsite();
+			assertEquals(fault.name(), 2, this.server.getRequestCount());
+		}
+		assertEquals(2 * MockFluxServer.Fault.values().length, api.getMetrics().getRequestCount());
+	}
+
+	@Test
+	public void faultRateFailsSomeRequests() throws FluxException {
+		final FluxAPI api = this.builder().build();
+		this.server.setFaultRate(MockFluxServer.Fault.CLOUDFLARE_520, 0.5);
+		int failed = 0;
+		for (int i = 0; i < 100; i++) {
+			try {
+				api.getWebsite();
+			} catch (final FluxException e) {
+				failed++;
+			}
+		}
+		assertTrue("failed " + failed, failed > 0 && failed < 100);
+		assertEquals(100, this.server.getRequestCount());
+	}
+
+	@Test
+	public void unchangedResponseIsNotSentAgain() throws FluxException {
+		final RequestHandler requests = this.builder().build().getRequestHandler();
+		final JsonObject first = requests.get("groups");
+		final JsonObject second = requests.get("groups");
+		assertEquals(first, second);
+		assertEquals(1, this.server.getNotModifiedCount());
+		assertEquals(1, requests.getMetrics().getNotModifiedCount());
+
+		// Every caller gets its own json object
+		second.addProperty("changed", true);
+		assertFalse(requests.get("groups").has("changed"));
+	}
+
+	@Test
+	public void changedResponseIsSentAgain() throws FluxException {
+		final RequestHandler requests = this.builder().build().getRequestHandler();
+		final JsonObject first = requests.get("groups");
+		this.server.addGroup(2, "Staff", 1, true);
+		final JsonObject second = requests.get("groups");
+		assertFalse(first.equals(second));
+		assertEquals(0, this.server.getNotModifiedCount());
+		assertEquals(second, requests.get("groups"));
+		assertEquals(1, this.server.getNotModifiedCount());
+	}
+
+	@Test
+	public void conditionalRequestsCanBeDisabled() throws FluxException {
+		final RequestHandler requests = this.builder().withConditionalRequests(false).build().getRequestHandler();
+		requests.get("groups");
+		requests.get("groups");
+		assertEquals(0, this.server.getNotModifiedCount());
+	}
+
+	@Test
+	public void sitesInAGroupShareTheConditionalCache() throws FluxException {
+		try (FluxClientGroup group = FluxClientGroup.builder().build()) {
+			final RequestHandler first = group.addSite("first", this.server.getApiUrl(), this.server.getApiKey()).getRequestHandler();
+			final RequestHandler second = group.addSite("second", this.server.getApiUrl(), this.server.getApiKey()).getRequestHandler();
+			first.get("groups");
+			// Kept separately for each site, even for the same URL
+			second.get("groups");
+			assertEquals(0, this.server.getNotModifiedCount());
+			first.get("groups");
+			second.get("groups");
+			assertEquals(2, this.server.getNotModifiedCount());
+		}
+	}
+
+	@Test
+	public void deadlineAbortsSlowRequest() {
+		final FluxAPI api = this.builder().withDeadlineMillis(200).build();
+		this.server.setLatency(5, TimeUnit.SECONDS);
+		final long start = System.nanoTime();
+		final RequestCancelledException e = assertThrows(RequestCancelledException.class, api::getWebsite);
+		assertTrue(e.isDeadlineExceeded());
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+	}
+
+	@Test
+	public void expiredDeadlineMakesNoRequest() {
+		final FluxAPI api = this.builder().build();
+		final Deadline deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+		final Deadline.Scope scope = deadline.attach();
+		try {
+			assertTrue(assertThrows(RequestCancelledException.class, api::getWebsite).isDeadlineExceeded());
+		} finally {
+			scope.close();
+		}
+		assertEquals(0, this.server.getRequestCount());
+	}
+
+	@Test
+	public void cancelledDeadlineAbortsRequest() {
+		final FluxAPI api = this.builder().build();
+		this.server.setLatency(5, TimeUnit.SECONDS);
+		final Deadline deadline = Deadline.none();
+		final ScheduledExecutorService canceller = Executors.newSingleThreadScheduledExecutor();
+		final long start = System.nanoTime();
+		final Deadline.Scope scope = deadline.attach();
+		try {
+			canceller.schedule(deadline::cancel, 200, TimeUnit.MILLISECONDS);
+			assertFalse(assertThrows(RequestCancelledException.class, api::getWebsite).isDeadlineExceeded());
+		} finally {
+			scope.close();
+			canceller.shutdown();
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.fluxnetworks.java_api;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Compares building request URLs with precompiled {@link Route}s to concatenating strings and encoding
+ * parameters with {@link URLEncoder}, the way URLs were built before routes. Both include {@code new URL(...)}.
+ *
+ * <p>Run with {@code java -cp <classpath> com.fluxnetworks.java_api.RouteBenchmark [rounds] [urls per round]}.
+ * The first half of the rounds are warmup.</p>
+ */
+public final class RouteBenchmark {
+
+	private static final String BASE_URL = "https://example.com/index.php?route=/api/v2";
+	private static final Route USER_INFO = Route.of("", RequestPriority.INTERACTIVE);
+	private static final Route NOTIFICATIONS = Route.of("users/{id}/notifications");
+
+	private RouteBenchmark() {
+	}
+
+	public static void main(final String[] args) throws MalformedURLException {
+		final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final int urls = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+		long sink = 0;
+		for (int round = 0; round < rounds; round++) {
+			final boolean warmup = round < rounds / 2;
+
+			long start = System.nanoTime();
+			for (int i = 0; i < urls; i++) {
+				sink += concatenated(i).getFile().length();
+			}
+			final long concatenatedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < urls; i++) {
+				sink += routed(i).getFile().length();
+			}
+			final long routedNanos = System.nanoTime() - start;
+
+			System.out.printf(Locale.ROOT, "round %2d%s  concatenated %6.1f ns/url  route %6.1f ns/url%n",
+					round, warmup ? " (warmup)" : "         ", (double) concatenatedNanos / urls, (double) routedNanos / urls);
+		}
+		// Printed so the work can't be optimized away
+		System.out.println("checksum " + sink);
+	}
+
+	private static @NotNull URL concatenated(final int i) throws MalformedURLException {
+		final StringBuilder url = new StringBuilder(BASE_URL);
+		if ((i & 1) == 0) {
+			url.append("/users/").append(i).append("/notifications");
+		} else {
+			url.append('/').append("&id=").append(encode(String.valueOf(i)));
+			url.append("&username=").append(encode("user name " + (i & 1023)));
+		}
+		return new URL(url.toString());
+	}
+
+	private static @NotNull URL routed(final int i) throws MalformedURLException {
+		final StringBuilder url = new StringBuilder(256);
+		url.append(BASE_URL);
+		if ((i & 1) == 0) {
+			NOTIFICATIONS.appendTo(url, '&', new Object[] { i });
+		} else {
+			USER_INFO.appendTo(url, '&', new Object[] { "id", i, "username", "user name " + (i & 1023) });
+		}
+		return new URL(url.toString());
+	}
+
+	private static @NotNull String encode(final @NotNull String value) {
+		try {
+			return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
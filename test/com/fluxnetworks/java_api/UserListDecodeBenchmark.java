@@ -0,0 +1,78 @@
+package com.fluxnetworks.java_api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares decoding user lists on the calling thread to decoding them in parallel on the common fork-join
+ * pool, for lists of different sizes. Only decoding is measured, no requests are made.
+ *
+ * <p>Run with {@code java -cp <classpath> com.fluxnetworks.java_api.UserListDecodeBenchmark [iterations]}.
+ * Results depend on the number of CPUs, the parallel speedup can only show with more than one.</p>
+ */
+public final class UserListDecodeBenchmark {
+
+	private static final int[] SIZES = { 1_000, 10_000, 100_000 };
+
+	private UserListDecodeBenchmark() {
+	}
+
+	public static void main(final String[] args) throws MalformedURLException {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		final URL url = new URL("http://127.0.0.1:1/api/v2");
+		final FluxAPI sequential = FluxAPI.builder(url, "key").withParallelDecoding(null, -1).build();
+		final FluxAPI parallel = FluxAPI.builder(url, "key").withParallelDecoding(null, 0).build();
+
+		System.out.printf(Locale.ROOT, "%d CPUs, common pool parallelism %d%n",
+				Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool().getParallelism());
+		System.out.printf(Locale.ROOT, "%8s  %12s  %12s%n", "users", "sequential", "parallel");
+		long sink = 0;
+		for (final int size : SIZES) {
+			final JsonArray array = userList(size);
+			// Warmup, also for later sizes
+			for (int i = 0; i < iterations; i++) {
+				sink += sequential.getRegisteredUsers().decode(array).size();
+				sink += parallel.getRegisteredUsers().decode(array).size();
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += sequential.getRegisteredUsers().decode(array).size();
+			}
+			final double sequentialMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += parallel.getRegisteredUsers().decode(array).size();
+			}
+			final double parallelMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+			System.out.printf(Locale.ROOT, "%8d  %9.2f ms  %9.2f ms%n", size, sequentialMillis, parallelMillis);
+		}
+		// Printed so the work can't be optimized away
+		System.out.println("checksum " + sink);
+	}
+
+	/**
+	 * @return User list like the website sends it, with an id, username and UUID for each user
+	 */
+	private static @NotNull JsonArray userList(final int size) {
+		final JsonArray array = new JsonArray(size);
+		for (int i = 0; i < size; i++) {
+			final JsonObject user = new JsonObject();
+			user.addProperty("id", i + 1);
+			user.addProperty("username", "user" + i);
+			user.addProperty("uuid", new UUID(i, i).toString().replace("-", ""));
+			array.add(user);
+		}
+		return array;
+	}
+
+}
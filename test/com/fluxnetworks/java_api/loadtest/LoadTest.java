@@ -0,0 +1,282 @@
+package com.fluxnetworks.java_api.loadtest;
+
+import com.google.gson.JsonObject;
+import com.fluxnetworks.java_api.FluxAPI;
+import com.fluxnetworks.java_api.FluxException;
+import com.fluxnetworks.java_api.MockFluxServer;
+import org.HdrHistogram.Histogram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link FluxAPI} with a mix of calls at a fixed rate, against a {@link MockFluxServer} or another
+ * stub website, and reports latency percentiles per call.
+ *
+ * <p>The load is open-loop: calls are started on a fixed schedule no matter how long earlier calls take,
+ * and latency is measured from the time a call was scheduled to start. A client that falls behind
+ * therefore shows the queueing delay in its latency, instead of hiding it by sending fewer calls
+ * (coordinated omission). Service time, measured from when the call actually started, is reported too.</p>
+ *
+ * <p>Options, all optional:</p>
+ * <pre>
+ * --rate=200          calls per second
+ * --duration=30       seconds to measure, after warmup
+ * --warmup=5          seconds of load before measuring
+ * --mix=getUser:60,getGroups:20,submitServerInfo:10,websend:10
+ * --users=1000        users on the mock server
+ * --latency=20        mock server latency in milliseconds
+ * --threads=64        maximum calls in progress
+ * --url=... --key=... use another website instead of the mock server
+ * --out=target/loadtest  directory for .hgrm percentile distributions
+ * </pre>
+ */
+public final class LoadTest {
+
+	// Microseconds, up to a minute
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final @NotNull FluxAPI api;
+	private final @NotNull List<UUID> uuids;
+	private final @NotNull Map<String, Call> calls = new LinkedHashMap<>();
+	private final int @NotNull[] weights;
+
+	private LoadTest(final @NotNull FluxAPI api, final @NotNull List<UUID> uuids, final @NotNull Map<String, Integer> mix) {
+		this.api = api;
+		this.uuids = uuids;
+		this.weights = new int[mix.size()];
+		int i = 0;
+		int total = 0;
+		for (final Map.Entry<String, Integer> e : mix.entrySet()) {
+			this.calls.put(e.getKey(), new Call(e.getKey(), this.operation(e.getKey())));
+			total += e.getValue();
+			this.weights[i++] = total;
+		}
+	}
+
+	private @NotNull Operation operation(final @NotNull String name) {
+		switch (name) {
+			case "getUser":
+				return random -> this.api.getUser(this.uuids.get(random.nextInt(this.uuids.size())));
+			case "getGroups":
+				return random -> this.api.getAllGroups();
+			case "submitServerInfo":
+				return random -> {
+					final JsonObject info = new JsonObject();
+					info.addProperty("server-id", 1);
+					info.addProperty("tps", 20);
+					info.addProperty("time", System.currentTimeMillis());
+					this.api.submitServerInfo(info);
+				};
+			case "websend":
+				return random -> this.api.websend().sendConsoleLog(1, Collections.singletonList("[INFO] load test " + random.nextInt()));
+			case "getWebsite":
+				return random -> this.api.getWebsite();
+			default:
+				throw new IllegalArgumentException("Unknown call " + name);
+		}
+	}
+
+	private @NotNull Call pick(final @NotNull SplittableRandom random) {
+		final int value = random.nextInt(this.weights[this.weights.length - 1]);
+		int i = 0;
+		for (final Call call : this.calls.values()) {
+			if (value < this.weights[i++]) {
+				return call;
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	private void run(final double rate, final long warmupSeconds, final long durationSeconds, final int threads) throws InterruptedException {
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		final long start = System.nanoTime();
+		final long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		final long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+		final SplittableRandom random = new SplittableRandom(0);
+
+		for (long i = 0; ; i++) {
+			final long intended = start + i * interval;
+			if (intended - end >= 0) {
+				break;
+			}
+			final long delay = intended - System.nanoTime();
+			if (delay > 0) {
+				LockSupport.parkNanos(delay);
+			}
+
+			final Call call = this.pick(random);
+			final SplittableRandom callRandom = random.split();
+			final boolean measured = intended - measureFrom >= 0;
+			workers.execute(() -> call.run(callRandom, intended, measured));
+		}
+
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	private void report(final @NotNull PrintStream out, final double rate, final long durationSeconds, final @Nullable File directory) throws IOException {
+		out.printf(Locale.ROOT, "Target rate %.0f/s for %ss%n", rate, durationSeconds);
+		out.printf(Locale.ROOT, "%-18s %8s %7s %9s %9s %9s %9s %9s %13s%n",
+				"call", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "p99 svc ms");
+
+		final Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+		for (final Call call : this.calls.values()) {
+			total.add(call.latency);
+			printSummary(out, call.name, call.latency, call.errors.sum(), call.serviceTime);
+			if (directory != null) {
+				writeDistribution(directory, call.name, call.latency);
+			}
+		}
+		printSummary(out, "all", total, this.calls.values().stream().mapToLong(c -> c.errors.sum()).sum(), null);
+		if (directory != null) {
+			writeDistribution(directory, "all", total);
+			out.println("Percentile distributions written to " + directory);
+		}
+		out.println(this.api.getMetrics());
+	}
+
+	private static void printSummary(final @NotNull PrintStream out, final @NotNull String name, final @NotNull Histogram latency,
+									 final long errors, final @Nullable Histogram serviceTime) {
+		out.printf(Locale.ROOT, "%-18s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %13s%n",
+				name, latency.getTotalCount(), errors,
+				latency.getValueAtPercentile(50) / 1000.0,
+				latency.getValueAtPercentile(90) / 1000.0,
+				latency.getValueAtPercentile(99) / 1000.0,
+				latency.getValueAtPercentile(99.9) / 1000.0,
+				latency.getMaxValue() / 1000.0,
+				serviceTime != null ? String.format(Locale.ROOT, "%.2f", serviceTime.getValueAtPercentile(99) / 1000.0) : "");
+	}
+
+	private static void writeDistribution(final @NotNull File directory, final @NotNull String name, final @NotNull Histogram histogram) throws IOException {
+		try (PrintStream out = new PrintStream(new FileOutputStream(new File(directory, name + ".hgrm")), false, "UTF-8")) {
+			// Recorded in microseconds, reported in milliseconds
+			histogram.outputPercentileDistribution(out, 1000.0);
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> options = new LinkedHashMap<>();
+		for (final String arg : args) {
+			final int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals == -1) {
+				throw new IllegalArgumentException("Expected --name=value, got " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+
+		final double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+		final long duration = Long.parseLong(options.getOrDefault("duration", "30"));
+		final long warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+		final int threads = Integer.parseInt(options.getOrDefault("threads", "64"));
+		final int userCount = Integer.parseInt(options.getOrDefault("users", "1000"));
+		final Map<String, Integer> mix = parseMix(options.getOrDefault("mix", "getUser:60,getGroups:20,submitServerInfo:10,websend:10"));
+		final File directory = new File(options.getOrDefault("out", "target/loadtest"));
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create " + directory);
+		}
+
+		MockFluxServer server = null;
+		try {
+			final FluxAPI api;
+			final List<UUID> uuids = new ArrayList<>();
+			if (options.containsKey("url")) {
+				api = FluxAPI.builder(new URL(options.get("url")), options.getOrDefault("key", "")).build();
+				uuids.add(UUID.randomUUID());
+			} else {
+				server = new MockFluxServer();
+				server.setLatency(Long.parseLong(options.getOrDefault("latency", "20")), TimeUnit.MILLISECONDS);
+				server.addGroup(1, "Member", 10, false);
+				server.addGroup(2, "Staff", 1, true);
+				for (int i = 0; i < userCount; i++) {
+					final UUID uuid = new UUID(i, i);
+					server.addUser("user" + i, uuid).addGroup(i % 50 == 0 ? 2 : 1);
+					uuids.add(uuid);
+				}
+				api = FluxAPI.builder(server.getApiUrl(), server.getApiKey()).build();
+			}
+
+			final LoadTest test = new LoadTest(api, uuids, mix);
+			test.run(rate, warmup, duration, threads);
+			test.report(System.out, rate, duration, directory);
+		} finally {
+			if (server != null) {
+				server.close();
+			}
+		}
+	}
+
+	private static @NotNull Map<String, Integer> parseMix(final @NotNull String mix) {
+		final Map<String, Integer> weights = new LinkedHashMap<>();
+		for (final String part : mix.split(",")) {
+			final String[] nameAndWeight = part.split(":");
+			if (nameAndWeight.length != 2) {
+				throw new IllegalArgumentException("Expected name:weight in mix, got " + part);
+			}
+			weights.put(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim()));
+		}
+		return weights;
+	}
+
+	@FunctionalInterface
+	private interface Operation {
+
+		void run(@NotNull SplittableRandom random) throws FluxException;
+
+	}
+
+	private static final class Call {
+
+		private final @NotNull String name;
+		private final @NotNull Operation operation;
+		// Histograms aren't thread safe, updates are synchronized on the call
+		private final @NotNull Histogram latency = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+		private final @NotNull Histogram serviceTime = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+		private final @NotNull LongAdder errors = new LongAdder();
+
+		private Call(final @NotNull String name, final @NotNull Operation operation) {
+			this.name = name;
+			this.operation = operation;
+		}
+
+		private void run(final @NotNull SplittableRandom random, final long intended, final boolean measured) {
+			final long started = System.nanoTime();
+			try {
+				this.operation.run(random);
+			} catch (final FluxException | RuntimeException e) {
+				if (measured) {
+					this.errors.increment();
+				}
+			}
+			final long finished = System.nanoTime();
+			if (measured) {
+				synchronized (this) {
+					this.latency.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(finished - intended)));
+					this.serviceTime.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(finished - started)));
+				}
+			}
+		}
+
+	}
+
+}